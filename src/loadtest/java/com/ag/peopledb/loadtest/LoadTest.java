@@ -0,0 +1,252 @@
+package com.ag.peopledb.loadtest;
+
+import com.ag.peopledb.model.IdRange;
+import com.ag.peopledb.model.Person;
+import com.ag.peopledb.repository.PeopleRepository;
+import com.ag.peopledb.repository.UnitOfWork;
+import com.ag.peopledb.storage.DatabaseBootstrap;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Seeds the database with synthetic people and then runs a mix of save, findById, update, delete and count
+ * from many threads, each with its own connection and repository, at a fixed total rate.
+ * Prints throughput, latency percentiles and errors per operation for every report interval and for the whole run.
+ * <p>
+ * Latency is measured from the moment an operation was due, not from when it actually started, so a database
+ * that falls behind the target rate shows up as growing latency instead of silently lowering the rate.
+ * <p>
+ * Configured with system properties (run with gradle loadTest -Dloadtest.threads=32 ...):
+ * loadtest.threads (16), loadtest.rate in operations per second, 0 for as fast as possible (2000),
+ * loadtest.duration in seconds (60), loadtest.report.interval in seconds (5), loadtest.seed.people (100000),
+ * loadtest.random.seed (42), loadtest.mix ({@value OperationMix#DEFAULT}) and loadtest.quiet (true),
+ * which silences what the repository prints for every row. The peopledb.* properties pick the storage mode.
+ */
+public class LoadTest {
+
+    private static final int SEED_BATCH_SIZE = 1000;
+
+    private final DatabaseBootstrap database;
+    private final int threads;
+    private final double rate;
+    private final Duration duration;
+    private final Duration reportInterval;
+    private final long randomSeed;
+    private final OperationMix mix;
+    private final PrintStream report;
+
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    private final AtomicLong minId = new AtomicLong(1);
+    private final AtomicLong maxId = new AtomicLong(0);
+
+    public LoadTest(DatabaseBootstrap database, int threads, double rate, Duration duration, Duration reportInterval,
+                    long randomSeed, OperationMix mix, PrintStream report) {
+        this.database = database;
+        this.threads = threads;
+        this.rate = rate;
+        this.duration = duration;
+        this.reportInterval = reportInterval;
+        this.randomSeed = randomSeed;
+        this.mix = mix;
+        this.report = report;
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Integer.getInteger("loadtest.threads", 16);
+        double rate = Double.parseDouble(System.getProperty("loadtest.rate", "2000"));
+        Duration duration = Duration.ofSeconds(Long.getLong("loadtest.duration", 60));
+        Duration reportInterval = Duration.ofSeconds(Long.getLong("loadtest.report.interval", 5));
+        int seedPeople = Integer.getInteger("loadtest.seed.people", 100_000);
+        long randomSeed = Long.getLong("loadtest.random.seed", 42);
+        OperationMix mix = OperationMix.parse(System.getProperty("loadtest.mix", OperationMix.DEFAULT));
+
+        PrintStream report = System.out;
+        if (Boolean.parseBoolean(System.getProperty("loadtest.quiet", "true"))) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        try (DatabaseBootstrap database = DatabaseBootstrap.fromSystemProperties()) {
+            report.printf("Storage %s, %d threads, %s ops/s, %d s, mix %s%n", database.getStorageMode(), threads,
+                    rate > 0 ? String.valueOf(rate) : "unlimited", duration.toSeconds(), mix);
+            LoadTest loadTest = new LoadTest(database, threads, rate, duration, reportInterval, randomSeed, mix, report);
+            loadTest.seed(seedPeople);
+            loadTest.run();
+        }
+    }
+
+    /**
+     * Tops the table up to the given number of people, in batches written with a {@link UnitOfWork}.
+     */
+    public void seed(int people) throws SQLException {
+        long start = System.nanoTime();
+        try (Connection connection = database.getConnection()) {
+            PeopleRepository repository = new PeopleRepository(connection);
+            SyntheticPeople generator = new SyntheticPeople(randomSeed);
+            long missing = people - repository.count();
+            while (missing > 0) {
+                UnitOfWork unitOfWork = new UnitOfWork(repository);
+                for (int i = 0; i < Math.min(SEED_BATCH_SIZE, missing); i++) {
+                    unitOfWork.registerNew(generator.next());
+                }
+                unitOfWork.commit();
+                missing -= SEED_BATCH_SIZE;
+            }
+            Optional<IdRange> idRange = repository.findIdRange();
+            idRange.ifPresent(range -> {
+                minId.set(range.min());
+                maxId.set(range.max());
+            });
+            report.printf("Seeded to %d people in %d ms%n", repository.count(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    public void run() throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        CountDownLatch connected = new CountDownLatch(threads);
+        CompletableFuture<Long> start = new CompletableFuture<>();
+        for (int worker = 0; worker < threads; worker++) {
+            int workerNumber = worker;
+            workers.submit(() -> work(workerNumber, connected, start));
+        }
+        connected.await();
+        long startNanos = System.nanoTime();
+        start.complete(startNanos);
+        reporter.scheduleAtFixedRate(() -> reportInterval(startNanos), reportInterval.toMillis(), reportInterval.toMillis(), TimeUnit.MILLISECONDS);
+        workers.shutdown();
+        workers.awaitTermination(duration.toSeconds() + 60, TimeUnit.SECONDS);
+        reporter.shutdownNow();
+        reporter.awaitTermination(10, TimeUnit.SECONDS);
+        reportTotals(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Opens its connection first and only starts the clock once every worker is connected.
+     */
+    private void work(int worker, CountDownLatch connected, CompletableFuture<Long> start) {
+        Random random = new Random(randomSeed + worker);
+        SyntheticPeople generator = new SyntheticPeople(randomSeed * 31 + worker);
+        long intervalNanos = rate > 0 ? (long) (threads * 1_000_000_000L / rate) : 0;
+        try (Connection connection = database.getConnection()) {
+            PeopleRepository repository = new PeopleRepository(connection);
+            connected.countDown();
+            long startNanos = start.join();
+            long endNanos = startNanos + duration.toNanos();
+            long due = startNanos + intervalNanos * worker / threads;
+            while (true) {
+                if (intervalNanos > 0) {
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) LockSupport.parkNanos(wait);
+                } else {
+                    due = System.nanoTime();
+                }
+                if (due >= endNanos) break;
+
+                Operation operation = mix.next(random);
+                OperationStats operationStats = stats.get(operation);
+                try {
+                    if (!execute(operation, repository, random, generator)) {
+                        operationStats.miss();
+                    }
+                } catch (RuntimeException e) {
+                    operationStats.error(e);
+                }
+                operationStats.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due));
+                due += intervalNanos;
+            }
+        } catch (SQLException e) {
+            connected.countDown();
+            report.println("Worker " + worker + " could not connect: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return false when the operation picked an ID that no longer exists
+     */
+    private boolean execute(Operation operation, PeopleRepository repository, Random random, SyntheticPeople generator) {
+        switch (operation) {
+            case SAVE -> {
+                Person person = repository.save(generator.next());
+                maxId.accumulateAndGet(person.getId(), Math::max);
+                return true;
+            }
+            case FIND_BY_ID -> {
+                return repository.findById(randomId(random)).isPresent();
+            }
+            case UPDATE -> {
+                Optional<Person> person = repository.findById(randomId(random));
+                person.ifPresent(found -> {
+                    found.setSalary(generator.nextSalary());
+                    repository.update(found);
+                });
+                return person.isPresent();
+            }
+            case DELETE -> {
+                Optional<Person> person = repository.findById(randomId(random));
+                person.ifPresent(repository::delete);
+                return person.isPresent();
+            }
+            case COUNT -> {
+                repository.count();
+                return true;
+            }
+            default -> throw new IllegalStateException("Unknown operation " + operation);
+        }
+    }
+
+    private long randomId(Random random) {
+        long min = minId.get();
+        long max = Math.max(min, maxId.get());
+        return min + (long) (random.nextDouble() * (max - min + 1));
+    }
+
+    private void reportInterval(long startNanos) {
+        long elapsedSeconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos);
+        double seconds = reportInterval.toMillis() / 1000.0;
+        long operations = 0;
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            LatencyHistogram latencies = entry.getValue().drainInterval();
+            long errors = entry.getValue().drainIntervalErrors();
+            operations += latencies.count();
+            if (latencies.count() == 0) continue;
+            report.printf("[%4ds] %-10s %9.1f ops/s  p50 %7d us  p90 %7d us  p99 %7d us  max %8d us  errors %d%n",
+                    elapsedSeconds, entry.getKey(), latencies.count() / seconds, latencies.percentile(50),
+                    latencies.percentile(90), latencies.percentile(99), latencies.max(), errors);
+        }
+        report.printf("[%4ds] %-10s %9.1f ops/s%n", elapsedSeconds, "ALL", operations / seconds);
+    }
+
+    private void reportTotals(long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        report.printf("%nTotals over %.1f s%n", seconds);
+        report.printf("%-10s %10s %10s %9s %9s %9s %9s %9s %9s %8s %8s%n",
+                "OPERATION", "COUNT", "OPS/S", "P50 US", "P90 US", "P99 US", "P99.9 US", "MAX US", "ERRORS", "ERROR %", "MISSES");
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            OperationStats operationStats = entry.getValue();
+            LatencyHistogram latencies = operationStats.total();
+            long count = latencies.count();
+            if (count == 0) continue;
+            report.printf("%-10s %10d %10.1f %9d %9d %9d %9d %9d %9d %7.2f%% %8d%n",
+                    entry.getKey(), count, count / seconds, latencies.percentile(50), latencies.percentile(90),
+                    latencies.percentile(99), latencies.percentile(99.9), latencies.max(),
+                    operationStats.totalErrors(), 100.0 * operationStats.totalErrors() / count, operationStats.misses());
+            operationStats.errorsByType().forEach((type, errors) -> report.printf("    %s: %d%n", type, errors.sum()));
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.ag.peopledb.loadtest;
+
+public enum Operation {
+    SAVE,
+    FIND_BY_ID,
+    UPDATE,
+    DELETE,
+    COUNT
+}
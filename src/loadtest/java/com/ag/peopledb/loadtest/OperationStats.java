@@ -0,0 +1,59 @@
+package com.ag.peopledb.loadtest;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies, errors and misses (IDs that no longer exist) of one operation,
+ * both for the current report interval and for the whole run.
+ */
+class OperationStats {
+
+    private final LatencyHistogram intervalLatencies = new LatencyHistogram();
+    private final LatencyHistogram totalLatencies = new LatencyHistogram();
+    private final AtomicLong intervalErrors = new AtomicLong();
+    private final LongAdder totalErrors = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final Map<String, LongAdder> errorsByType = new ConcurrentHashMap<>();
+
+    void record(long micros) {
+        intervalLatencies.record(micros);
+        totalLatencies.record(micros);
+    }
+
+    void miss() {
+        misses.increment();
+    }
+
+    void error(Throwable error) {
+        intervalErrors.incrementAndGet();
+        totalErrors.increment();
+        errorsByType.computeIfAbsent(error.getClass().getSimpleName(), type -> new LongAdder()).increment();
+    }
+
+    LatencyHistogram drainInterval() {
+        return intervalLatencies.drain();
+    }
+
+    long drainIntervalErrors() {
+        return intervalErrors.getAndSet(0);
+    }
+
+    LatencyHistogram total() {
+        return totalLatencies;
+    }
+
+    long totalErrors() {
+        return totalErrors.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    Map<String, LongAdder> errorsByType() {
+        return errorsByType;
+    }
+}
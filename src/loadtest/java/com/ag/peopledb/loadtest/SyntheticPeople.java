@@ -0,0 +1,77 @@
+package com.ag.peopledb.loadtest;
+
+import com.ag.peopledb.model.Address;
+import com.ag.peopledb.model.Person;
+import com.ag.peopledb.model.Region;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates people shaped like the rows of Hr5m.csv: first and last name, an e-mail built from them,
+ * a date and time of birth between 1960 and 2000, a salary between 40 000 and 200 000 and a home address
+ * with county, city, state, zip and region. The same seed gives the same people.
+ * E-mails are unique across all generators of one run, so they work as the upsert key.
+ */
+public class SyntheticPeople {
+
+    private static final String[] FIRST_NAMES = {"James", "Mary", "John", "Patricia", "Robert", "Jennifer", "Michael",
+            "Linda", "William", "Elizabeth", "David", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah",
+            "Charles", "Karen", "Christopher", "Nancy", "Daniel", "Lisa", "Matthew", "Betty", "Anthony", "Margaret"};
+    private static final String[] LAST_NAMES = {"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller",
+            "Davis", "Rodriguez", "Martinez", "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor",
+            "Moore", "Jackson", "Martin", "Lee", "Perez", "Thompson", "White", "Harris", "Sanchez", "Clark", "Ramirez"};
+    private static final String[] EMAIL_DOMAINS = {"gmail.com", "yahoo.com", "hotmail.com", "aol.com", "msn.com", "cox.net"};
+    private static final String[] STREETS = {"Main St", "Oak Ave", "Pine St", "Maple Dr", "Cedar Ln", "Elm St", "Lake Rd", "Hill St"};
+    private static final Place[] PLACES = {
+            new Place("Seattle", "King", "WA", "98101", Region.WEST),
+            new Place("Portland", "Multnomah", "OR", "97201", Region.WEST),
+            new Place("Boston", "Suffolk", "MA", "02108", Region.NORTHEAST),
+            new Place("Albany", "Albany", "NY", "12207", Region.NORTHEAST),
+            new Place("Chicago", "Cook", "IL", "60601", Region.MIDWEST),
+            new Place("Omaha", "Douglas", "NE", "68102", Region.MIDWEST),
+            new Place("Atlanta", "Fulton", "GA", "30303", Region.SOUTH),
+            new Place("Austin", "Travis", "TX", "78701", Region.SOUTH),
+            new Place("Fargo", "Cass", "ND", "58102", Region.NORTH),
+            new Place("Richmond", "Henrico", "VA", "23219", Region.EAST),
+    };
+    private static final long FIRST_BIRTH = ZonedDateTime.of(1960, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC).toEpochSecond();
+    private static final long LAST_BIRTH = ZonedDateTime.of(2000, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC).toEpochSecond();
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final Random random;
+
+    public SyntheticPeople(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public Person next() {
+        String firstName = pick(FIRST_NAMES);
+        String lastName = pick(LAST_NAMES);
+        long birth = FIRST_BIRTH + (long) (random.nextDouble() * (LAST_BIRTH - FIRST_BIRTH));
+        Person person = new Person(firstName, lastName, ZonedDateTime.ofInstant(Instant.ofEpochSecond(birth), ZoneOffset.UTC), nextSalary());
+        person.setEmail(String.format("%s.%s.%d@%s", firstName, lastName, SEQUENCE.incrementAndGet(), pick(EMAIL_DOMAINS))
+                .toLowerCase(Locale.ROOT));
+        Place place = pick(PLACES);
+        person.setHomeAddress(new Address(null, (1 + random.nextInt(9999)) + " " + pick(STREETS), null,
+                place.city(), place.state(), place.zip(), "United States", place.county(), place.region()));
+        return person;
+    }
+
+    public BigDecimal nextSalary() {
+        return BigDecimal.valueOf(40_000 + random.nextDouble() * 160_000).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private <E> E pick(E[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private record Place(String city, String county, String state, String zip, Region region) {
+    }
+}
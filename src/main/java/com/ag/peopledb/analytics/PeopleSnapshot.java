@@ -0,0 +1,333 @@
+package com.ag.peopledb.analytics;
+
+import com.ag.peopledb.exeption.UnableToSaveException;
+import com.ag.peopledb.model.OperationClass;
+import com.ag.peopledb.model.Region;
+import com.ag.peopledb.repository.AdmissionControl;
+import com.ag.peopledb.repository.PeopleRepository;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Read-only, column-oriented copy of PEOPLE for analytics.
+ * Every column is a primitive array indexed by row: IDs, date of birth in epoch seconds (UTC),
+ * salary in cents, the ordinal of the home address {@link Region} and dictionary codes for names and emails.
+ * Aggregates run over chunks of rows in parallel.
+ */
+public final class PeopleSnapshot {
+
+    static final int SALARY_SCALE = 2;
+    static final long NULL_LONG = Long.MIN_VALUE;
+    static final byte NO_REGION = -1;
+
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final Region[] REGIONS = Region.values();
+    private static final int FETCH_SIZE = 1000;
+
+    private final int size;
+    private final long[] ids;
+    private final long[] dobEpochSeconds;
+    private final long[] salaryCents;
+    private final byte[] regionOrdinals;
+    private final int[] firstNameCodes;
+    private final int[] lastNameCodes;
+    private final int[] emailCodes;
+    private final String[] dictionary;
+
+    private PeopleSnapshot(Builder builder) {
+        this.size = builder.size;
+        this.ids = Arrays.copyOf(builder.ids, size);
+        this.dobEpochSeconds = Arrays.copyOf(builder.dobEpochSeconds, size);
+        this.salaryCents = Arrays.copyOf(builder.salaryCents, size);
+        this.regionOrdinals = Arrays.copyOf(builder.regionOrdinals, size);
+        this.firstNameCodes = Arrays.copyOf(builder.firstNameCodes, size);
+        this.lastNameCodes = Arrays.copyOf(builder.lastNameCodes, size);
+        this.emailCodes = Arrays.copyOf(builder.emailCodes, size);
+        this.dictionary = builder.dictionary.toArray(new String[0]);
+    }
+
+    /**
+     * Builds a snapshot from one pass over {@link PeopleRepository#SNAPSHOT_SQL}.
+     */
+    public static PeopleSnapshot load(Connection connection) {
+        return load(connection, new AdmissionControl());
+    }
+
+    /**
+     * Same as {@link #load(Connection)}, but the pass is a {@link OperationClass#SCAN} under the given admission control.
+     */
+    public static PeopleSnapshot load(Connection connection, AdmissionControl admissionControl) {
+        Builder builder = new Builder();
+        try (AdmissionControl.Permit permit = admissionControl.admit(OperationClass.SCAN);
+             PreparedStatement preparedStatement = connection.prepareStatement(PeopleRepository.SNAPSHOT_SQL,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            preparedStatement.setFetchSize(FETCH_SIZE);
+            ResultSet resultSet = permit.execute(preparedStatement, PreparedStatement::executeQuery);
+            while (resultSet.next()) {
+                Timestamp dob = resultSet.getTimestamp("DOB");
+                String region = resultSet.getString("REGION");
+                builder.add(resultSet.getLong("ID"),
+                        resultSet.getString("FIRST_NAME"),
+                        resultSet.getString("LAST_NAME"),
+                        resultSet.getString("EMAIL"),
+                        dob == null ? null : dob.toLocalDateTime().toEpochSecond(ZoneOffset.UTC),
+                        resultSet.getBigDecimal("SALARY"),
+                        region == null ? null : Region.valueOf(region.toUpperCase()));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Loading people snapshot failed. Try again later");
+        }
+        return builder.build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long id(int row) {
+        return ids[row];
+    }
+
+    public String firstName(int row) {
+        return decode(firstNameCodes[row]);
+    }
+
+    public String lastName(int row) {
+        return decode(lastNameCodes[row]);
+    }
+
+    public String email(int row) {
+        return decode(emailCodes[row]);
+    }
+
+    public Region region(int row) {
+        return regionOrdinals[row] == NO_REGION ? null : REGIONS[regionOrdinals[row]];
+    }
+
+    public SalaryStats salaryStats() {
+        return chunks()
+                .mapToObj(chunk -> salaryStats(chunkStart(chunk), chunkEnd(chunk)))
+                .reduce(SalaryStats.EMPTY, SalaryStats::combine);
+    }
+
+    /**
+     * Salary statistics per home address region. People without a home address are left out.
+     */
+    public Map<Region, SalaryStats> salaryStatsByRegion() {
+        SalaryStats[] byOrdinal = chunks()
+                .mapToObj(chunk -> salaryStatsByRegion(chunkStart(chunk), chunkEnd(chunk)))
+                .reduce(PeopleSnapshot::combine)
+                .orElseGet(PeopleSnapshot::emptyRegionStats);
+
+        Map<Region, SalaryStats> result = new EnumMap<>(Region.class);
+        for (Region region : REGIONS) {
+            result.put(region, byOrdinal[region.ordinal()]);
+        }
+        return result;
+    }
+
+    /**
+     * Counts people by age on the given day in bands of bandYears: index 0 holds ages 0 to bandYears - 1 and so on.
+     * The last band also holds everybody older. People without a date of birth or born after asOf are not counted.
+     */
+    public long[] ageHistogram(LocalDate asOf, int bandYears, int bands) {
+        if (bandYears < 1 || bands < 1) {
+            throw new IllegalArgumentException("Band width and number of bands must be positive");
+        }
+        long[] bandStarts = new long[bands];
+        for (int band = 0; band < bands; band++) {
+            bandStarts[band] = bornBeforeForAge(asOf, band * bandYears);
+        }
+        return chunks()
+                .mapToObj(chunk -> ageHistogram(chunkStart(chunk), chunkEnd(chunk), bandStarts))
+                .reduce(new long[bands], PeopleSnapshot::add);
+    }
+
+    /**
+     * Counts salaries in buckets of bucketWidth starting at 0. The last bucket also holds all higher salaries.
+     */
+    public long[] salaryHistogram(BigDecimal bucketWidth, int buckets) {
+        long widthCents = bucketWidth.setScale(SALARY_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        if (widthCents < 1 || buckets < 1) {
+            throw new IllegalArgumentException("Bucket width and number of buckets must be positive");
+        }
+        return chunks()
+                .mapToObj(chunk -> salaryHistogram(chunkStart(chunk), chunkEnd(chunk), widthCents, buckets))
+                .reduce(new long[buckets], PeopleSnapshot::add);
+    }
+
+    private SalaryStats salaryStats(int from, int to) {
+        long count = 0, sum = 0, min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (int row = from; row < to; row++) {
+            long salary = salaryCents[row];
+            if (salary == NULL_LONG) continue;
+            count++;
+            sum += salary;
+            min = Math.min(min, salary);
+            max = Math.max(max, salary);
+        }
+        return new SalaryStats(count, sum, min, max);
+    }
+
+    private SalaryStats[] salaryStatsByRegion(int from, int to) {
+        long[] count = new long[REGIONS.length];
+        long[] sum = new long[REGIONS.length];
+        long[] min = new long[REGIONS.length];
+        long[] max = new long[REGIONS.length];
+        Arrays.fill(min, Long.MAX_VALUE);
+        Arrays.fill(max, Long.MIN_VALUE);
+        for (int row = from; row < to; row++) {
+            int region = regionOrdinals[row];
+            long salary = salaryCents[row];
+            if (region == NO_REGION || salary == NULL_LONG) continue;
+            count[region]++;
+            sum[region] += salary;
+            min[region] = Math.min(min[region], salary);
+            max[region] = Math.max(max[region], salary);
+        }
+        SalaryStats[] stats = new SalaryStats[REGIONS.length];
+        for (int region = 0; region < REGIONS.length; region++) {
+            stats[region] = count[region] == 0 ? SalaryStats.EMPTY : new SalaryStats(count[region], sum[region], min[region], max[region]);
+        }
+        return stats;
+    }
+
+    private long[] ageHistogram(int from, int to, long[] bandStarts) {
+        long[] histogram = new long[bandStarts.length];
+        for (int row = from; row < to; row++) {
+            long dob = dobEpochSeconds[row];
+            if (dob == NULL_LONG || dob >= bandStarts[0]) continue;
+            int band = bandStarts.length - 1;
+            while (dob >= bandStarts[band]) band--;
+            histogram[band]++;
+        }
+        return histogram;
+    }
+
+    private long[] salaryHistogram(int from, int to, long widthCents, int buckets) {
+        long[] histogram = new long[buckets];
+        for (int row = from; row < to; row++) {
+            long salary = salaryCents[row];
+            if (salary == NULL_LONG) continue;
+            long bucket = Math.max(0, salary) / widthCents;
+            histogram[(int) Math.min(buckets - 1, bucket)]++;
+        }
+        return histogram;
+    }
+
+    /**
+     * Anybody born before the returned epoch second is at least the given age on asOf.
+     */
+    private static long bornBeforeForAge(LocalDate asOf, int age) {
+        return asOf.minusYears(age).plusDays(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private IntStream chunks() {
+        return IntStream.range(0, (size + CHUNK_SIZE - 1) / CHUNK_SIZE).parallel();
+    }
+
+    private static int chunkStart(int chunk) {
+        return chunk * CHUNK_SIZE;
+    }
+
+    private int chunkEnd(int chunk) {
+        return Math.min(size, (chunk + 1) * CHUNK_SIZE);
+    }
+
+    private String decode(int code) {
+        return code < 0 ? null : dictionary[code];
+    }
+
+    private static SalaryStats[] emptyRegionStats() {
+        SalaryStats[] stats = new SalaryStats[REGIONS.length];
+        Arrays.fill(stats, SalaryStats.EMPTY);
+        return stats;
+    }
+
+    private static SalaryStats[] combine(SalaryStats[] left, SalaryStats[] right) {
+        SalaryStats[] combined = new SalaryStats[left.length];
+        for (int i = 0; i < left.length; i++) {
+            combined[i] = left[i].combine(right[i]);
+        }
+        return combined;
+    }
+
+    private static long[] add(long[] left, long[] right) {
+        long[] sum = new long[left.length];
+        for (int i = 0; i < left.length; i++) {
+            sum[i] = left[i] + right[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Collects rows into growing column arrays. Equal strings share one dictionary entry.
+     */
+    public static final class Builder {
+        private int size;
+        private long[] ids = new long[1024];
+        private long[] dobEpochSeconds = new long[1024];
+        private long[] salaryCents = new long[1024];
+        private byte[] regionOrdinals = new byte[1024];
+        private int[] firstNameCodes = new int[1024];
+        private int[] lastNameCodes = new int[1024];
+        private int[] emailCodes = new int[1024];
+        private final List<String> dictionary = new ArrayList<>();
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        public Builder add(long id, String firstName, String lastName, String email, Long dobEpochSecond,
+                           BigDecimal salary, Region region) {
+            if (size == ids.length) grow();
+            ids[size] = id;
+            firstNameCodes[size] = encode(firstName);
+            lastNameCodes[size] = encode(lastName);
+            emailCodes[size] = encode(email);
+            dobEpochSeconds[size] = dobEpochSecond == null ? NULL_LONG : dobEpochSecond;
+            salaryCents[size] = salary == null
+                    ? NULL_LONG
+                    : salary.setScale(SALARY_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+            regionOrdinals[size] = region == null ? NO_REGION : (byte) region.ordinal();
+            size++;
+            return this;
+        }
+
+        public PeopleSnapshot build() {
+            return new PeopleSnapshot(this);
+        }
+
+        private int encode(String value) {
+            if (value == null) return -1;
+            return codes.computeIfAbsent(value, v -> {
+                dictionary.add(v);
+                return dictionary.size() - 1;
+            });
+        }
+
+        private void grow() {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            dobEpochSeconds = Arrays.copyOf(dobEpochSeconds, capacity);
+            salaryCents = Arrays.copyOf(salaryCents, capacity);
+            regionOrdinals = Arrays.copyOf(regionOrdinals, capacity);
+            firstNameCodes = Arrays.copyOf(firstNameCodes, capacity);
+            lastNameCodes = Arrays.copyOf(lastNameCodes, capacity);
+            emailCodes = Arrays.copyOf(emailCodes, capacity);
+        }
+    }
+}
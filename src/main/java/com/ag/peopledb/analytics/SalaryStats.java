@@ -0,0 +1,36 @@
+package com.ag.peopledb.analytics;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Count, sum, min and max of salaries kept in hundredths (cents), as stored in a {@link PeopleSnapshot}.
+ */
+public record SalaryStats(long count, long sumCents, long minCents, long maxCents) {
+
+    public static final SalaryStats EMPTY = new SalaryStats(0, 0, Long.MAX_VALUE, Long.MIN_VALUE);
+
+    public SalaryStats combine(SalaryStats other) {
+        if (other.count == 0) return this;
+        if (count == 0) return other;
+        return new SalaryStats(count + other.count, sumCents + other.sumCents,
+                Math.min(minCents, other.minCents), Math.max(maxCents, other.maxCents));
+    }
+
+    public BigDecimal sum() {
+        return BigDecimal.valueOf(sumCents, PeopleSnapshot.SALARY_SCALE);
+    }
+
+    public BigDecimal average() {
+        if (count == 0) return BigDecimal.ZERO;
+        return sum().divide(BigDecimal.valueOf(count), PeopleSnapshot.SALARY_SCALE, RoundingMode.HALF_UP);
+    }
+
+    public BigDecimal min() {
+        return count == 0 ? null : BigDecimal.valueOf(minCents, PeopleSnapshot.SALARY_SCALE);
+    }
+
+    public BigDecimal max() {
+        return count == 0 ? null : BigDecimal.valueOf(maxCents, PeopleSnapshot.SALARY_SCALE);
+    }
+}
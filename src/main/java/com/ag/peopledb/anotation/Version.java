@@ -0,0 +1,14 @@
+package com.ag.peopledb.anotation;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Marks the field holding the row version used for optimistic locking.
+ * The annotated entity's update and delete SQL must end with "WHERE ID=? AND VERSION=?"
+ * and the update SQL must increment VERSION.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Version {
+
+}
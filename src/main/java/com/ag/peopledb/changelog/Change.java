@@ -0,0 +1,9 @@
+package com.ag.peopledb.changelog;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row of CHANGE_LOG: the row with the given ID of the given table was inserted, updated or deleted.
+ */
+public record Change(long sequence, String tableName, long rowId, ChangeType type, LocalDateTime changedAt) {
+}
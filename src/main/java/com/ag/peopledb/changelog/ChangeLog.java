@@ -0,0 +1,81 @@
+package com.ag.peopledb.changelog;
+
+import com.ag.peopledb.exeption.UnableToSaveException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Change log of PEOPLE and ADDRESSES kept by database triggers, so that every application instance
+ * can find out which rows any instance changed, see {@link ChangeLogConsumer}.
+ */
+public final class ChangeLog {
+
+    public static final List<String> TABLES = List.of("PEOPLE", "ADDRESSES");
+
+    static final String CREATE_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS CHANGE_LOG (
+                SEQ BIGINT AUTO_INCREMENT PRIMARY KEY,
+                TABLE_NAME VARCHAR(64) NOT NULL,
+                ROW_ID BIGINT NOT NULL,
+                OP VARCHAR(6) NOT NULL,
+                CHANGED_AT TIMESTAMP DEFAULT LOCALTIMESTAMP NOT NULL
+            )
+            """;
+    static final String CREATE_TRIGGER_SQL = "CREATE TRIGGER IF NOT EXISTS %1$s_CHANGE_LOG AFTER INSERT, UPDATE, DELETE ON %1$s FOR EACH ROW CALL '%2$s'";
+    static final String APPEND_SQL = "INSERT INTO CHANGE_LOG (TABLE_NAME, ROW_ID, OP) VALUES (?, ?, ?)";
+    static final String READ_SQL = "SELECT SEQ, TABLE_NAME, ROW_ID, OP, CHANGED_AT FROM CHANGE_LOG WHERE SEQ > ? ORDER BY SEQ LIMIT ?";
+    static final String LATEST_SEQUENCE_SQL = "SELECT COALESCE(MAX(SEQ), 0) FROM CHANGE_LOG";
+    static final String PRUNE_SQL = "DELETE FROM CHANGE_LOG WHERE SEQ <= ? AND SEQ < (SELECT MAX(SEQ) FROM CHANGE_LOG)";
+
+    private ChangeLog() {
+    }
+
+    /**
+     * Creates CHANGE_LOG and the triggers on PEOPLE and ADDRESSES unless they already exist.
+     */
+    public static void install(Connection connection) {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_TABLE_SQL);
+            for (String table : TABLES) {
+                statement.execute(String.format(CREATE_TRIGGER_SQL, table, ChangeLogTrigger.class.getName()));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Installing change log failed. Try again later");
+        }
+    }
+
+    /**
+     * Sequence number of the newest entry, 0 if the log is empty. A consumer that has just read
+     * everything from the tables themselves starts from here.
+     */
+    public static long latestSequence(Connection connection) {
+        try (Statement statement = connection.createStatement()) {
+            ResultSet resultSet = statement.executeQuery(LATEST_SEQUENCE_SQL);
+            resultSet.next();
+            return resultSet.getLong(1);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Nothing has been found. Try again later");
+        }
+    }
+
+    /**
+     * Deletes the entries up to and including the given sequence number, once every consumer is past it.
+     * The newest entry is always kept, so {@link #latestSequence(Connection)} does not go back.
+     */
+    public static int prune(Connection connection, long upToSequence) {
+        try (PreparedStatement preparedStatement = connection.prepareStatement(PRUNE_SQL)) {
+            preparedStatement.setLong(1, upToSequence);
+            return preparedStatement.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Pruning change log failed. Try again later");
+        }
+    }
+}
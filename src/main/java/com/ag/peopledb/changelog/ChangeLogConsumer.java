@@ -0,0 +1,84 @@
+package com.ag.peopledb.changelog;
+
+import com.ag.peopledb.exeption.UnableToSaveException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Reads the change log incrementally, starting after a sequence number the caller saved from {@link #position()}.
+ * <p>
+ * Sequence numbers are handed out when a write happens, not when it commits, so a transaction that commits
+ * late leaves a temporary gap in front of entries that are already visible. A poll stops at such a gap
+ * and only skips it once it has stayed open for gapTimeout, which is what a rolled back write looks like.
+ * Every missing sequence number a poll reads past is remembered with the time it was first seen,
+ * so several gaps age at the same time instead of one after another.
+ * An entry is therefore never missed unless its transaction runs longer than gapTimeout, and never returned twice.
+ */
+public class ChangeLogConsumer {
+
+    private final Connection connection;
+    private final Duration gapTimeout;
+    private final TreeMap<Long, Long> gapsSeenAtNanos = new TreeMap<>();
+    private long position;
+
+    public ChangeLogConsumer(Connection connection, long position, Duration gapTimeout) {
+        this.connection = connection;
+        this.position = position;
+        this.gapTimeout = gapTimeout;
+    }
+
+    /**
+     * Sequence number of the last change returned; save it to resume from there.
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Returns at most maxChanges changes after the current position, oldest first, and moves past them.
+     */
+    public List<Change> poll(int maxChanges) {
+        List<Change> changes = new ArrayList<>();
+        try (PreparedStatement preparedStatement = connection.prepareStatement(ChangeLog.READ_SQL)) {
+            preparedStatement.setLong(1, position);
+            preparedStatement.setInt(2, maxChanges);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            long now = System.nanoTime();
+            long expected = position + 1;
+            boolean blocked = false;
+            while (resultSet.next()) {
+                long sequence = resultSet.getLong("SEQ");
+                for (long missing = expected; missing < sequence; missing++) {
+                    gapsSeenAtNanos.putIfAbsent(missing, now);
+                }
+                expected = sequence + 1;
+                // keep reading past an open gap, only to start the clocks of the gaps behind it
+                blocked = blocked || !gapsExpired(sequence, now);
+                if (blocked) continue;
+                changes.add(new Change(sequence, resultSet.getString("TABLE_NAME"), resultSet.getLong("ROW_ID"),
+                        ChangeType.valueOf(resultSet.getString("OP")), resultSet.getTimestamp("CHANGED_AT").toLocalDateTime()));
+                position = sequence;
+            }
+            gapsSeenAtNanos.headMap(position, true).clear();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Reading change log failed. Try again later");
+        }
+        return changes;
+    }
+
+    /**
+     * Whether every sequence number missing between the position and the given one has been missing for gapTimeout.
+     */
+    private boolean gapsExpired(long sequence, long now) {
+        return gapsSeenAtNanos.subMap(position, false, sequence, false).values().stream()
+                .allMatch(seenAtNanos -> now - seenAtNanos >= gapTimeout.toNanos());
+    }
+}
@@ -0,0 +1,42 @@
+package com.ag.peopledb.changelog;
+
+import org.h2.api.Trigger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * H2 row trigger that appends every insert, update and delete of its table to CHANGE_LOG.
+ * It runs inside the writing transaction, so a rolled back write leaves no entry behind.
+ * Installed by {@link ChangeLog#install(Connection)}.
+ */
+public class ChangeLogTrigger implements Trigger {
+
+    private String tableName;
+    private int idColumn;
+
+    @Override
+    public void init(Connection connection, String schemaName, String triggerName, String tableName, boolean before, int type) throws SQLException {
+        this.tableName = tableName;
+        try (ResultSet columns = connection.getMetaData().getColumns(null, schemaName, tableName, "ID")) {
+            if (!columns.next()) {
+                throw new SQLException("Table without ID column can not have a change log: " + tableName);
+            }
+            idColumn = columns.getInt("ORDINAL_POSITION") - 1;
+        }
+    }
+
+    @Override
+    public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
+        ChangeType type = oldRow == null ? ChangeType.INSERT : newRow == null ? ChangeType.DELETE : ChangeType.UPDATE;
+        Object[] row = newRow == null ? oldRow : newRow;
+        try (PreparedStatement preparedStatement = connection.prepareStatement(ChangeLog.APPEND_SQL)) {
+            preparedStatement.setString(1, tableName);
+            preparedStatement.setLong(2, ((Number) row[idColumn]).longValue());
+            preparedStatement.setString(3, type.name());
+            preparedStatement.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.ag.peopledb.changelog;
+
+public enum ChangeType {
+    INSERT,
+    UPDATE,
+    DELETE
+}
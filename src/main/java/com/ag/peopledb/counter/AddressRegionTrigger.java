@@ -0,0 +1,42 @@
+package com.ag.peopledb.counter;
+
+import org.h2.api.Trigger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+
+/**
+ * H2 row trigger on ADDRESSES that moves the people living at an address to another region counter
+ * when the region of the address changes. Addresses still in use can not be deleted, so updates are all it handles.
+ */
+public class AddressRegionTrigger implements Trigger {
+
+    private int idColumn;
+    private int regionColumn;
+
+    @Override
+    public void init(Connection connection, String schemaName, String triggerName, String tableName, boolean before, int type) throws SQLException {
+        idColumn = RowCounters.columnIndex(connection, schemaName, tableName, "ID");
+        regionColumn = RowCounters.columnIndex(connection, schemaName, tableName, "REGION");
+    }
+
+    @Override
+    public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
+        String oldRegion = RowCounters.regionKey(oldRow[regionColumn]);
+        String newRegion = RowCounters.regionKey(newRow[regionColumn]);
+        if (Objects.equals(oldRegion, newRegion)) return;
+
+        long people;
+        try (PreparedStatement preparedStatement = connection.prepareStatement(RowCounters.PEOPLE_AT_HOME_ADDRESS_SQL)) {
+            preparedStatement.setObject(1, newRow[idColumn]);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            resultSet.next();
+            people = resultSet.getLong(1);
+        }
+        RowCounters.add(connection, RowCounters.REGION, oldRegion, -people);
+        RowCounters.add(connection, RowCounters.REGION, newRegion, people);
+    }
+}
@@ -0,0 +1,52 @@
+package com.ag.peopledb.counter;
+
+import org.h2.api.Trigger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Objects;
+
+/**
+ * H2 row trigger on PEOPLE that keeps the total, per region and per parent counters of {@link RowCounters}
+ * up to date. An update only touches the counters when it moves a person to another home address or parent.
+ */
+public class PeopleCountTrigger implements Trigger {
+
+    private int homeAddressColumn;
+    private int parentIdColumn;
+
+    @Override
+    public void init(Connection connection, String schemaName, String triggerName, String tableName, boolean before, int type) throws SQLException {
+        homeAddressColumn = RowCounters.columnIndex(connection, schemaName, tableName, "HOME_ADDRESS");
+        parentIdColumn = RowCounters.columnIndex(connection, schemaName, tableName, "PARENT_ID");
+    }
+
+    @Override
+    public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
+        if (oldRow == null) {
+            count(connection, newRow, 1);
+        } else if (newRow == null) {
+            count(connection, oldRow, -1);
+        } else {
+            if (!Objects.equals(oldRow[homeAddressColumn], newRow[homeAddressColumn])) {
+                RowCounters.add(connection, RowCounters.REGION, RowCounters.regionOfAddress(connection, oldRow[homeAddressColumn]), -1);
+                RowCounters.add(connection, RowCounters.REGION, RowCounters.regionOfAddress(connection, newRow[homeAddressColumn]), 1);
+            }
+            if (!Objects.equals(oldRow[parentIdColumn], newRow[parentIdColumn])) {
+                RowCounters.add(connection, RowCounters.PARENT, parentKey(oldRow), -1);
+                RowCounters.add(connection, RowCounters.PARENT, parentKey(newRow), 1);
+            }
+        }
+    }
+
+    private void count(Connection connection, Object[] row, long delta) throws SQLException {
+        RowCounters.add(connection, RowCounters.PEOPLE, RowCounters.TOTAL_KEY, delta);
+        RowCounters.add(connection, RowCounters.REGION, RowCounters.regionOfAddress(connection, row[homeAddressColumn]), delta);
+        RowCounters.add(connection, RowCounters.PARENT, parentKey(row), delta);
+    }
+
+    private String parentKey(Object[] row) {
+        Object parentId = row[parentIdColumn];
+        return parentId == null ? null : parentId.toString();
+    }
+}
@@ -0,0 +1,49 @@
+package com.ag.peopledb.counter;
+
+import com.ag.peopledb.repository.ConnectionProvider;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link RowCounters#reconcile(Connection)} on its own connection at a fixed delay,
+ * so counters that drifted, e.g. after the triggers were dropped for a bulk load, heal by themselves.
+ */
+public class RowCountReconciler implements AutoCloseable {
+
+    private final ConnectionProvider connectionProvider;
+    private final ScheduledExecutorService scheduler;
+
+    private RowCountReconciler(ConnectionProvider connectionProvider, Duration interval) {
+        this.connectionProvider = connectionProvider;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "row-count-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::reconcileQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static RowCountReconciler start(ConnectionProvider connectionProvider, Duration interval) {
+        return new RowCountReconciler(connectionProvider, interval);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void reconcileQuietly() {
+        try (Connection connection = connectionProvider.getConnection()) {
+            RowCounters.reconcile(connection);
+        } catch (SQLException | RuntimeException e) {
+            // retried on the next run
+            e.printStackTrace();
+        }
+    }
+}
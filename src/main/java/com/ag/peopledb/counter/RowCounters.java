@@ -0,0 +1,159 @@
+package com.ag.peopledb.counter;
+
+import com.ag.peopledb.exeption.UnableToSaveException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Row counts of PEOPLE kept in ROW_COUNTS by database triggers: the total, the number of people per
+ * region of their home address and the number of children per parent. Triggers run inside the writing
+ * transaction, so the counters see exactly what COUNT(*) would see in that transaction.
+ * <p>
+ * Every counter is split into {@link #SLOTS} rows and a write adds its delta to a random one of them,
+ * so concurrent writers rarely wait for each other's row locks. A read sums the slots of one counter.
+ * {@link #reconcile(Connection)} compares the counters with the tables and corrects any drift,
+ * {@link RowCountReconciler} does that in the background.
+ */
+public final class RowCounters {
+
+    public static final String PEOPLE = "PEOPLE";
+    public static final String REGION = "REGION";
+    public static final String PARENT = "PARENT";
+    public static final String TOTAL_KEY = "*";
+    public static final int SLOTS = 16;
+
+    public static final String READ_SQL = "SELECT COALESCE(SUM(ROW_COUNT), 0) FROM ROW_COUNTS WHERE COUNTER_NAME = ? AND COUNTER_KEY = ?";
+
+    static final String CREATE_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS ROW_COUNTS (
+                COUNTER_NAME VARCHAR(16) NOT NULL,
+                COUNTER_KEY VARCHAR(64) NOT NULL,
+                SLOT INT NOT NULL,
+                ROW_COUNT BIGINT NOT NULL,
+                PRIMARY KEY (COUNTER_NAME, COUNTER_KEY, SLOT)
+            )
+            """;
+    static final String CREATE_PEOPLE_TRIGGER_SQL = "CREATE TRIGGER IF NOT EXISTS PEOPLE_ROW_COUNTS AFTER INSERT, UPDATE, DELETE ON PEOPLE FOR EACH ROW CALL '%s'";
+    static final String CREATE_ADDRESSES_TRIGGER_SQL = "CREATE TRIGGER IF NOT EXISTS ADDRESSES_ROW_COUNTS AFTER UPDATE ON ADDRESSES FOR EACH ROW CALL '%s'";
+    static final String INSTALLED_SQL = "SELECT 1 FROM INFORMATION_SCHEMA.TRIGGERS WHERE TRIGGER_NAME = 'PEOPLE_ROW_COUNTS'";
+    static final String ADD_SQL = "UPDATE ROW_COUNTS SET ROW_COUNT = ROW_COUNT + ? WHERE COUNTER_NAME = ? AND COUNTER_KEY = ? AND SLOT = ?";
+    static final String INSERT_SQL = "INSERT INTO ROW_COUNTS (ROW_COUNT, COUNTER_NAME, COUNTER_KEY, SLOT) VALUES (?, ?, ?, ?)";
+    static final String REGION_OF_ADDRESS_SQL = "SELECT REGION FROM ADDRESSES WHERE ID = ?";
+    static final String PEOPLE_AT_HOME_ADDRESS_SQL = "SELECT COUNT(*) FROM PEOPLE WHERE HOME_ADDRESS = ?";
+    // one statement, so the tables and the counters are read from the same snapshot
+    static final String DRIFT_SQL = """
+            SELECT COUNTER_NAME, COUNTER_KEY, SUM(ROW_COUNT) AS DRIFT FROM (
+                SELECT 'PEOPLE' AS COUNTER_NAME, '*' AS COUNTER_KEY, COUNT(*) AS ROW_COUNT FROM PEOPLE
+                UNION ALL
+                SELECT 'REGION', UPPER(HOME.REGION), COUNT(*) FROM PEOPLE JOIN ADDRESSES AS HOME ON HOME.ID = PEOPLE.HOME_ADDRESS
+                WHERE HOME.REGION IS NOT NULL GROUP BY UPPER(HOME.REGION)
+                UNION ALL
+                SELECT 'PARENT', CAST(PARENT_ID AS VARCHAR), COUNT(*) FROM PEOPLE WHERE PARENT_ID IS NOT NULL GROUP BY PARENT_ID
+                UNION ALL
+                SELECT COUNTER_NAME, COUNTER_KEY, -SUM(ROW_COUNT) FROM ROW_COUNTS GROUP BY COUNTER_NAME, COUNTER_KEY
+            ) GROUP BY COUNTER_NAME, COUNTER_KEY HAVING SUM(ROW_COUNT) <> 0
+            """;
+
+    private static final String DUPLICATE_KEY = "23505";
+
+    private RowCounters() {
+    }
+
+    /**
+     * Creates ROW_COUNTS and its triggers unless they already exist and brings the counters up to date.
+     */
+    public static void install(Connection connection) {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_TABLE_SQL);
+            statement.execute(String.format(CREATE_PEOPLE_TRIGGER_SQL, PeopleCountTrigger.class.getName()));
+            statement.execute(String.format(CREATE_ADDRESSES_TRIGGER_SQL, AddressRegionTrigger.class.getName()));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Installing row counters failed. Try again later");
+        }
+        reconcile(connection);
+    }
+
+    public static boolean isInstalled(Connection connection) {
+        try (Statement statement = connection.createStatement()) {
+            return statement.executeQuery(INSTALLED_SQL).next();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Nothing has been found. Try again later");
+        }
+    }
+
+    /**
+     * Recomputes the counts from PEOPLE and ADDRESSES and adds the difference to the counters.
+     * Adding keeps the deltas of writers running at the same time intact.
+     *
+     * @return number of counters that had drifted
+     */
+    public static int reconcile(Connection connection) {
+        int corrected = 0;
+        try (Statement statement = connection.createStatement()) {
+            ResultSet resultSet = statement.executeQuery(DRIFT_SQL);
+            while (resultSet.next()) {
+                add(connection, resultSet.getString("COUNTER_NAME"), resultSet.getString("COUNTER_KEY"), 0, resultSet.getLong("DRIFT"));
+                corrected++;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Reconciling row counters failed. Try again later");
+        }
+        return corrected;
+    }
+
+    static void add(Connection connection, String counterName, String counterKey, long delta) throws SQLException {
+        add(connection, counterName, counterKey, ThreadLocalRandom.current().nextInt(SLOTS), delta);
+    }
+
+    static void add(Connection connection, String counterName, String counterKey, int slot, long delta) throws SQLException {
+        if (counterKey == null || delta == 0) return;
+        if (update(connection, ADD_SQL, counterName, counterKey, slot, delta) > 0) return;
+        try {
+            update(connection, INSERT_SQL, counterName, counterKey, slot, delta);
+        } catch (SQLException e) {
+            // another transaction created the slot first
+            if (!DUPLICATE_KEY.equals(e.getSQLState())) throw e;
+            update(connection, ADD_SQL, counterName, counterKey, slot, delta);
+        }
+    }
+
+    static String regionOfAddress(Connection connection, Object addressId) throws SQLException {
+        if (addressId == null) return null;
+        try (PreparedStatement preparedStatement = connection.prepareStatement(REGION_OF_ADDRESS_SQL)) {
+            preparedStatement.setObject(1, addressId);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            return resultSet.next() ? regionKey(resultSet.getString("REGION")) : null;
+        }
+    }
+
+    static String regionKey(Object region) {
+        return region == null ? null : region.toString().toUpperCase();
+    }
+
+    static int columnIndex(Connection connection, String schemaName, String tableName, String columnName) throws SQLException {
+        try (ResultSet columns = connection.getMetaData().getColumns(null, schemaName, tableName, columnName)) {
+            if (!columns.next()) {
+                throw new SQLException("Column " + columnName + " not found in " + tableName);
+            }
+            return columns.getInt("ORDINAL_POSITION") - 1;
+        }
+    }
+
+    private static int update(Connection connection, String sql, String counterName, String counterKey, int slot, long delta) throws SQLException {
+        try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setLong(1, delta);
+            preparedStatement.setString(2, counterName);
+            preparedStatement.setString(3, counterKey);
+            preparedStatement.setInt(4, slot);
+            return preparedStatement.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.ag.peopledb.exeption;
+
+import com.ag.peopledb.model.OperationClass;
+
+/**
+ * Thrown instead of running an operation when its bulkhead is full, i.e. all slots are taken and
+ * the queue is full or the wait for a slot timed out. Nothing has been sent to the database.
+ */
+public class OperationRejectedException extends UnableToSaveException {
+
+    private final OperationClass operationClass;
+
+    public OperationRejectedException(OperationClass operationClass) {
+        super(String.format("Too many %s operations running. Try again later", operationClass));
+        this.operationClass = operationClass;
+    }
+
+    public OperationClass getOperationClass() {
+        return operationClass;
+    }
+}
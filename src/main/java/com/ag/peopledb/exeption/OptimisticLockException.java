@@ -0,0 +1,24 @@
+package com.ag.peopledb.exeption;
+
+/**
+ * Thrown when an update or delete finds no row with the expected ID and version,
+ * i.e. somebody else changed or deleted the entity since it was read.
+ */
+public class OptimisticLockException extends UnableToSaveException {
+    private final Long id;
+    private final Long version;
+
+    public OptimisticLockException(Object entity, Long id, Long version) {
+        super(String.format("Entity with ID %d was changed or deleted since version %d was read: %s", id, version, entity));
+        this.id = id;
+        this.version = version;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,147 @@
+package com.ag.peopledb.export;
+
+import com.ag.peopledb.model.Address;
+import com.ag.peopledb.model.Person;
+import com.ag.peopledb.model.Region;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.ag.peopledb.export.BinaryRowWriter.*;
+
+/**
+ * Reads a file written in {@link ExportFormat#BINARY} through memory-mapped windows of the file,
+ * so even files larger than 2 GB are read without copying them onto the heap.
+ */
+public final class BinaryPeopleReader implements Closeable {
+
+    private static final long MAX_WINDOW_SIZE = 1L << 30;
+    private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES;
+
+    private final FileChannel channel;
+    private final long fileSize;
+
+    public BinaryPeopleReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path);
+        this.fileSize = channel.size();
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(HEADER_SIZE, fileSize));
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            channel.close();
+            throw new IOException("Not a people export file: " + path);
+        }
+        short version = header.getShort();
+        if (version != VERSION) {
+            channel.close();
+            throw new IOException(String.format("Unsupported people export version %d in %s", version, path));
+        }
+    }
+
+    /**
+     * Lazily reads all people in file order. Each person carries its home address, if it had one.
+     */
+    public Stream<Person> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new RecordIterator(),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private final class RecordIterator implements Iterator<Person> {
+        private long position = HEADER_SIZE;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        @Override
+        public boolean hasNext() {
+            return position < fileSize;
+        }
+
+        @Override
+        public Person next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            try {
+                ensureMapped(Integer.BYTES);
+                int length = window.getInt();
+                ensureMapped(Integer.BYTES + length);
+                window.position(window.position() + Integer.BYTES);
+                Person person = readPerson();
+                position += Integer.BYTES + length;
+                return person;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Positions the window at the current record and makes sure the next {@code bytes} bytes are mapped.
+         */
+        private void ensureMapped(int bytes) throws IOException {
+            if (window == null || position + bytes > windowStart + window.capacity()) {
+                windowStart = position;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(MAX_WINDOW_SIZE, fileSize - windowStart));
+                if (window.capacity() < bytes) {
+                    throw new IOException("Truncated record at offset " + position);
+                }
+            }
+            window.position((int) (position - windowStart));
+        }
+
+        private Person readPerson() {
+            long id = window.getLong();
+            String firstName = readString();
+            String lastName = readString();
+            String email = readString();
+            long dobEpochSecond = window.getLong();
+            long salaryUnscaled = window.getLong();
+            byte salaryScale = window.get();
+
+            ZonedDateTime dob = dobEpochSecond == NULL_LONG
+                    ? null
+                    : ZonedDateTime.of(LocalDateTime.ofEpochSecond(dobEpochSecond, 0, ZoneOffset.UTC), ZoneOffset.UTC);
+            BigDecimal salary = salaryScale == NULL_SCALE ? null : BigDecimal.valueOf(salaryUnscaled, salaryScale);
+            Person person = new Person(id, firstName, lastName, dob, salary);
+            person.setEmail(email);
+
+            long homeId = window.getLong();
+            String streetAddress = readString();
+            String address2 = readString();
+            String city = readString();
+            String state = readString();
+            String postcode = readString();
+            String county = readString();
+            String region = readString();
+            String country = readString();
+            if (homeId != 0) {
+                person.setHomeAddress(new Address(homeId, streetAddress, address2, city, state, postcode, country, county,
+                        region == null ? null : Region.valueOf(region.toUpperCase())));
+            }
+            return person;
+        }
+
+        private String readString() {
+            int length = window.getInt();
+            if (length < 0) return null;
+            byte[] bytes = new byte[length];
+            window.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.ag.peopledb.export;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.ZoneOffset;
+
+/**
+ * Writes the binary export format:
+ * <pre>
+ * file   := MAGIC:int VERSION:short record*
+ * record := length:int id:long firstName lastName email dob:long salaryUnscaled:long salaryScale:byte
+ *           homeId:long street address2 city state postcode county region country
+ * string := byteCount:int utf8Bytes      (byteCount -1 means null)
+ * </pre>
+ * length counts the bytes that follow it. dob is in epoch seconds (UTC), {@link #NULL_LONG} means null,
+ * as does a salaryScale of {@link #NULL_SCALE}. homeId is 0 for people without a home address.
+ */
+final class BinaryRowWriter implements RowWriter {
+
+    static final int MAGIC = 0x50504C42;
+    static final short VERSION = 1;
+    static final long NULL_LONG = Long.MIN_VALUE;
+    static final byte NULL_SCALE = Byte.MIN_VALUE;
+
+    private static final String[] PERSON_STRINGS = {"FIRST_NAME", "LAST_NAME", "EMAIL"};
+    private static final String[] ADDRESS_STRINGS = {"STREET_ADDRESS", "ADDRESS2", "CITY", "STATE", "POSTCODE", "COUNTY", "REGION", "COUNTRY"};
+
+    private final byte[][] personStrings = new byte[PERSON_STRINGS.length][];
+    private final byte[][] addressStrings = new byte[ADDRESS_STRINGS.length][];
+
+    @Override
+    public void writeHeader(ChannelOutput output) throws IOException {
+        output.reserve(Integer.BYTES + Short.BYTES)
+                .putInt(MAGIC)
+                .putShort(VERSION);
+    }
+
+    @Override
+    public void writeRow(ResultSet resultSet, ChannelOutput output) throws SQLException, IOException {
+        long id = resultSet.getLong("ID");
+        int length = Long.BYTES + readStrings(resultSet, PERSON_STRINGS, personStrings);
+
+        Timestamp dob = resultSet.getTimestamp("DOB");
+        BigDecimal salary = resultSet.getBigDecimal("SALARY");
+        length += Long.BYTES + Long.BYTES + Byte.BYTES;
+
+        long homeId = resultSet.getLong("HOME_ID");
+        length += Long.BYTES + readStrings(resultSet, ADDRESS_STRINGS, addressStrings);
+
+        ByteBuffer buffer = output.reserve(Integer.BYTES + length);
+        buffer.putInt(length);
+        buffer.putLong(id);
+        putStrings(buffer, personStrings);
+        buffer.putLong(dob == null ? NULL_LONG : dob.toLocalDateTime().toEpochSecond(ZoneOffset.UTC));
+        buffer.putLong(salary == null ? 0 : salary.unscaledValue().longValueExact());
+        buffer.put(salary == null ? NULL_SCALE : (byte) salary.scale());
+        buffer.putLong(homeId);
+        putStrings(buffer, addressStrings);
+    }
+
+    private static int readStrings(ResultSet resultSet, String[] columns, byte[][] values) throws SQLException {
+        int length = 0;
+        for (int i = 0; i < columns.length; i++) {
+            String value = resultSet.getString(columns[i]);
+            values[i] = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+            length += Integer.BYTES + (values[i] == null ? 0 : values[i].length);
+        }
+        return length;
+    }
+
+    private static void putStrings(ByteBuffer buffer, byte[][] values) {
+        for (byte[] value : values) {
+            if (value == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(value.length);
+                buffer.put(value);
+            }
+        }
+    }
+}
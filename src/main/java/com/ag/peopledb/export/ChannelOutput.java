@@ -0,0 +1,66 @@
+package com.ag.peopledb.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Buffers bytes in a direct buffer and writes them to a FileChannel whenever the buffer fills up.
+ */
+final class ChannelOutput implements Closeable {
+
+    static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    ChannelOutput(Path path) throws IOException {
+        this.channel = FileChannel.open(path, CREATE, TRUNCATE_EXISTING, WRITE);
+    }
+
+    /**
+     * Makes sure the next {@code bytes} bytes can be put into the returned buffer without overflowing it.
+     */
+    ByteBuffer reserve(int bytes) throws IOException {
+        if (bytes > buffer.capacity()) {
+            throw new IOException(String.format("Record of %d bytes does not fit into the %d bytes write buffer", bytes, buffer.capacity()));
+        }
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+        return buffer;
+    }
+
+    void write(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.capacity()) {
+            flush();
+            ByteBuffer source = ByteBuffer.wrap(bytes);
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+            return;
+        }
+        reserve(bytes.length).put(bytes);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.ag.peopledb.export;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * Writes the Hr5m.csv layout. Columns that PEOPLE/ADDRESSES do not store are left empty,
+ * so a file written here can be read back by the same loader that imports Hr5m.csv.
+ */
+final class CsvRowWriter implements RowWriter {
+
+    static final String HEADER = "Emp ID,Name Prefix,First Name,Middle Initial,Last Name,Gender,E Mail,Father's Name," +
+            "Mother's Name,Mother's Maiden Name,Date of Birth,Time of Birth,Age in Yrs.,Weight in Kgs.,Date of Joining," +
+            "Quarter of Joining,Half of Joining,Year of Joining,Month of Joining,Month Name of Joining,Short Month," +
+            "Day of Joining,DOW of Joining,Short DOW,Age in Company (Years),Salary,Last % Hike,SSN,Phone No. ,Place Name," +
+            "County,City,State,Zip,Region,User Name,Password";
+
+    private static final int COLUMN_COUNT = 37;
+    private static final int EMP_ID = 0;
+    private static final int FIRST_NAME = 2;
+    private static final int LAST_NAME = 4;
+    private static final int EMAIL = 6;
+    private static final int DATE_OF_BIRTH = 10;
+    private static final int TIME_OF_BIRTH = 11;
+    private static final int SALARY = 25;
+    private static final int COUNTY = 30;
+    private static final int CITY = 31;
+    private static final int STATE = 32;
+    private static final int ZIP = 33;
+    private static final int REGION = 34;
+
+    private final String[] columns = new String[COLUMN_COUNT];
+    private final StringBuilder line = new StringBuilder(256);
+
+    @Override
+    public void writeHeader(ChannelOutput output) throws IOException {
+        output.write((HEADER + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void writeRow(ResultSet resultSet, ChannelOutput output) throws SQLException, IOException {
+        columns[EMP_ID] = resultSet.getString("ID");
+        columns[FIRST_NAME] = resultSet.getString("FIRST_NAME");
+        columns[LAST_NAME] = resultSet.getString("LAST_NAME");
+        columns[EMAIL] = resultSet.getString("EMAIL");
+        Timestamp dob = resultSet.getTimestamp("DOB");
+        columns[DATE_OF_BIRTH] = dob == null ? null : formatDate(dob.toLocalDateTime());
+        columns[TIME_OF_BIRTH] = dob == null ? null : formatTime(dob.toLocalDateTime());
+        BigDecimal salary = resultSet.getBigDecimal("SALARY");
+        columns[SALARY] = salary == null ? null : salary.toPlainString();
+        columns[COUNTY] = resultSet.getString("COUNTY");
+        columns[CITY] = resultSet.getString("CITY");
+        columns[STATE] = resultSet.getString("STATE");
+        columns[ZIP] = resultSet.getString("POSTCODE");
+        columns[REGION] = resultSet.getString("REGION");
+
+        line.setLength(0);
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            if (i > 0) line.append(',');
+            appendField(columns[i]);
+        }
+        line.append('\n');
+        output.write(line.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void appendField(String value) {
+        if (value == null) return;
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            line.append(value);
+            return;
+        }
+        line.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    /**
+     * Same as the "M/d/yyyy" pattern the import uses, without going through a DateTimeFormatter.
+     */
+    private static String formatDate(LocalDateTime dateTime) {
+        return dateTime.getMonthValue() + "/" + dateTime.getDayOfMonth() + "/" + dateTime.getYear();
+    }
+
+    /**
+     * Same as the "h:mm:ss a" pattern the import uses.
+     */
+    private static String formatTime(LocalDateTime dateTime) {
+        int hour = dateTime.getHour() % 12 == 0 ? 12 : dateTime.getHour() % 12;
+        return hour + ":" + twoDigits(dateTime.getMinute()) + ":" + twoDigits(dateTime.getSecond()) + (dateTime.getHour() < 12 ? " AM" : " PM");
+    }
+
+    private static String twoDigits(int value) {
+        return value < 10 ? "0" + value : String.valueOf(value);
+    }
+}
@@ -0,0 +1,29 @@
+package com.ag.peopledb.export;
+
+public enum ExportFormat {
+    /**
+     * Text file with the column layout of the Hr5m.csv import file.
+     */
+    CSV(".csv"),
+    /**
+     * Length-prefixed records, see {@link BinaryRowWriter}. Read back with {@link BinaryPeopleReader}.
+     */
+    BINARY(".bin");
+
+    private final String fileExtension;
+
+    ExportFormat(String fileExtension) {
+        this.fileExtension = fileExtension;
+    }
+
+    public String fileExtension() {
+        return fileExtension;
+    }
+
+    RowWriter newRowWriter() {
+        return switch (this) {
+            case CSV -> new CsvRowWriter();
+            case BINARY -> new BinaryRowWriter();
+        };
+    }
+}
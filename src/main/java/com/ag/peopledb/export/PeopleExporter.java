@@ -0,0 +1,139 @@
+package com.ag.peopledb.export;
+
+import com.ag.peopledb.exeption.UnableToSaveException;
+import com.ag.peopledb.model.IdRange;
+import com.ag.peopledb.model.OperationClass;
+import com.ag.peopledb.repository.AdmissionControl;
+import com.ag.peopledb.repository.ConnectionProvider;
+import com.ag.peopledb.repository.PeopleRepository;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Dumps PEOPLE together with their home ADDRESSES to files. Rows go straight from a forward-only cursor
+ * into the file buffer, so memory use does not grow with the size of the table.
+ */
+public class PeopleExporter {
+
+    private static final int FETCH_SIZE = 1000;
+
+    private final ConnectionProvider connectionProvider;
+    private final AdmissionControl admissionControl;
+
+    public PeopleExporter(ConnectionProvider connectionProvider) {
+        this(connectionProvider, new AdmissionControl());
+    }
+
+    /**
+     * Every part of an export is a {@link OperationClass#SCAN} under the given admission control,
+     * so exports share the scan limit and query timeout of the repositories.
+     */
+    public PeopleExporter(ConnectionProvider connectionProvider, AdmissionControl admissionControl) {
+        this.connectionProvider = connectionProvider;
+        this.admissionControl = admissionControl;
+    }
+
+    /**
+     * Writes all people into a single file. Returns the number of exported rows.
+     */
+    public long export(Path file, ExportFormat format) throws IOException {
+        Optional<IdRange> idRange = findIdRange();
+        try (ChannelOutput output = new ChannelOutput(file)) {
+            RowWriter rowWriter = format.newRowWriter();
+            rowWriter.writeHeader(output);
+            return idRange.isPresent() ? exportRange(idRange.get(), rowWriter, output) : 0;
+        }
+    }
+
+    /**
+     * Splits PEOPLE by ID into the given number of parts and writes each part to its own file in parallel,
+     * every part on its own connection. Files are named {@code <baseName>-<part><extension>};
+     * each one has its own header. Returns the written files in ID order.
+     */
+    public List<Path> export(Path directory, String baseName, ExportFormat format, int parts) throws IOException {
+        Optional<IdRange> idRange = findIdRange();
+        if (idRange.isEmpty()) {
+            Path file = directory.resolve(baseName + "-0" + format.fileExtension());
+            export(file, format);
+            return List.of(file);
+        }
+
+        List<IdRange> ranges = idRange.get().split(parts);
+        ExecutorService executor = Executors.newFixedThreadPool(ranges.size());
+        try {
+            List<Path> files = new ArrayList<>();
+            List<Future<Long>> results = new ArrayList<>();
+            for (int part = 0; part < ranges.size(); part++) {
+                Path file = directory.resolve(baseName + "-" + part + format.fileExtension());
+                IdRange range = ranges.get(part);
+                files.add(file);
+                results.add(executor.submit(() -> exportPart(file, range, format)));
+            }
+            for (Future<Long> result : results) {
+                result.get();
+            }
+            return files;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UnableToSaveException("Exporting people interrupted. Try again later");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) throw ioException;
+            if (e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long exportPart(Path file, IdRange range, ExportFormat format) throws IOException {
+        try (ChannelOutput output = new ChannelOutput(file)) {
+            RowWriter rowWriter = format.newRowWriter();
+            rowWriter.writeHeader(output);
+            return exportRange(range, rowWriter, output);
+        }
+    }
+
+    private long exportRange(IdRange range, RowWriter rowWriter, ChannelOutput output) throws IOException {
+        long rows = 0;
+        try (AdmissionControl.Permit permit = admissionControl.admit(OperationClass.SCAN);
+             Connection connection = connectionProvider.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(PeopleRepository.EXPORT_IN_RANGE_SQL,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            preparedStatement.setFetchSize(FETCH_SIZE);
+            preparedStatement.setLong(1, range.min());
+            preparedStatement.setLong(2, range.max());
+            ResultSet resultSet = permit.execute(preparedStatement, PreparedStatement::executeQuery);
+            while (resultSet.next()) {
+                rowWriter.writeRow(resultSet, output);
+                rows++;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Exporting people failed. Try again later");
+        }
+        return rows;
+    }
+
+    private Optional<IdRange> findIdRange() {
+        try (Connection connection = connectionProvider.getConnection()) {
+            PeopleRepository repository = new PeopleRepository(connection);
+            repository.setAdmissionControl(admissionControl);
+            return repository.findIdRange();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Exporting people failed. Try again later");
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.ag.peopledb.export;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Writes rows of {@link com.ag.peopledb.repository.PeopleRepository#EXPORT_IN_RANGE_SQL} straight from the cursor,
+ * without building Person objects.
+ */
+interface RowWriter {
+
+    void writeHeader(ChannelOutput output) throws IOException;
+
+    void writeRow(ResultSet resultSet, ChannelOutput output) throws SQLException, IOException;
+}
@@ -0,0 +1,139 @@
+package com.ag.peopledb.index;
+
+/**
+ * Probabilistic set of longs and strings. {@link #mightContain(long)} never returns false for a value that was added
+ * and not removed, and returns true for other values with roughly the false positive rate the filter was sized for.
+ * <p>
+ * Every slot is a 4-bit counter instead of a single bit so that values can be removed again.
+ * A counter that reaches 15 sticks there, which can only cause extra false positives, never false negatives.
+ * Removing a value that was never added breaks that guarantee, so only remove what was added.
+ */
+public final class CountingBloomFilter {
+
+    private static final int COUNTERS_PER_WORD = 16;
+    private static final long COUNTER_MASK = 0xF;
+    private static final long SATURATED = 0xF;
+
+    private final long[] words;
+    private final long slots;
+    private final int hashFunctions;
+    private final long expectedInsertions;
+    private long insertions;
+
+    private CountingBloomFilter(long slots, int hashFunctions, long expectedInsertions) {
+        this.slots = slots;
+        this.hashFunctions = hashFunctions;
+        this.expectedInsertions = expectedInsertions;
+        this.words = new long[(int) ((slots + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD)];
+    }
+
+    /**
+     * Sizes the filter so that after expectedInsertions values the false positive rate is about falsePositiveRate.
+     */
+    public static CountingBloomFilter create(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException(String.format("Invalid bloom filter size: %d values at %f", expectedInsertions, falsePositiveRate));
+        }
+        double ln2 = Math.log(2);
+        long slots = Math.max(COUNTERS_PER_WORD, (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (ln2 * ln2)));
+        int hashFunctions = Math.max(1, (int) Math.round((double) slots / expectedInsertions * ln2));
+        return new CountingBloomFilter(slots, hashFunctions, expectedInsertions);
+    }
+
+    public synchronized void add(long value) {
+        long hash = mix(value);
+        for (int i = 0; i < hashFunctions; i++) {
+            increment(slot(hash, i));
+        }
+        insertions++;
+    }
+
+    public void add(String value) {
+        add(hash(value));
+    }
+
+    public synchronized void remove(long value) {
+        if (!mightContain(value)) return;
+        long hash = mix(value);
+        for (int i = 0; i < hashFunctions; i++) {
+            decrement(slot(hash, i));
+        }
+        insertions--;
+    }
+
+    public void remove(String value) {
+        remove(hash(value));
+    }
+
+    public synchronized boolean mightContain(long value) {
+        long hash = mix(value);
+        for (int i = 0; i < hashFunctions; i++) {
+            if (counter(slot(hash, i)) == 0) return false;
+        }
+        return true;
+    }
+
+    public boolean mightContain(String value) {
+        return mightContain(hash(value));
+    }
+
+    /**
+     * Whether more values were added than the filter was sized for, so that its false positive rate is now higher.
+     */
+    public synchronized boolean isOverCapacity() {
+        return insertions > expectedInsertions;
+    }
+
+    /**
+     * Double hashing: the i-th slot is h1 + i * h2, both taken from one 64-bit hash.
+     */
+    private long slot(long hash, int i) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long combined = (h1 + (long) i * h2) & Long.MAX_VALUE;
+        return combined % slots;
+    }
+
+    private long counter(long slot) {
+        return (words[(int) (slot / COUNTERS_PER_WORD)] >>> shift(slot)) & COUNTER_MASK;
+    }
+
+    private void increment(long slot) {
+        if (counter(slot) < SATURATED) {
+            words[(int) (slot / COUNTERS_PER_WORD)] += 1L << shift(slot);
+        }
+    }
+
+    private void decrement(long slot) {
+        long counter = counter(slot);
+        if (counter > 0 && counter < SATURATED) {
+            words[(int) (slot / COUNTERS_PER_WORD)] -= 1L << shift(slot);
+        }
+    }
+
+    private static int shift(long slot) {
+        return (int) (slot % COUNTERS_PER_WORD) * 4;
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters of the string.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Finalizer of SplitMix64, spreads the bits of consecutive IDs over the whole word.
+     */
+    private static long mix(long value) {
+        long z = value + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
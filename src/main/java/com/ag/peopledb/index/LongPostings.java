@@ -0,0 +1,69 @@
+package com.ag.peopledb.index;
+
+import java.util.Arrays;
+
+/**
+ * Sorted set of IDs in a primitive array. IDs mostly arrive in ascending order, so adding is usually an append.
+ */
+final class LongPostings {
+
+    private long[] ids = new long[4];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    long get(int index) {
+        return ids[index];
+    }
+
+    void add(long id) {
+        if (size == 0 || id > ids[size - 1]) {
+            ensureCapacity(size + 1);
+            ids[size++] = id;
+            return;
+        }
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index >= 0) return;
+        int insertionPoint = -index - 1;
+        ensureCapacity(size + 1);
+        System.arraycopy(ids, insertionPoint, ids, insertionPoint + 1, size - insertionPoint);
+        ids[insertionPoint] = id;
+        size++;
+    }
+
+    boolean remove(long id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index < 0) return false;
+        System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    boolean contains(long id) {
+        return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+
+    /**
+     * Adds all IDs of the other postings; cheap when all of them are greater than the ones already here.
+     */
+    void addAll(LongPostings other) {
+        if (other.size == 0) return;
+        if (size == 0 || other.ids[0] > ids[size - 1]) {
+            ensureCapacity(size + other.size);
+            System.arraycopy(other.ids, 0, ids, size, other.size);
+            size += other.size;
+            return;
+        }
+        for (int i = 0; i < other.size; i++) {
+            add(other.ids[i]);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(capacity, ids.length + (ids.length >> 1)));
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.ag.peopledb.index;
+
+import com.ag.peopledb.changelog.Change;
+import com.ag.peopledb.changelog.ChangeType;
+import com.ag.peopledb.exeption.OperationRejectedException;
+import com.ag.peopledb.exeption.UnableToSaveException;
+import com.ag.peopledb.model.IdRange;
+import com.ag.peopledb.model.OperationClass;
+import com.ag.peopledb.model.Person;
+import com.ag.peopledb.repository.AdmissionControl;
+import com.ag.peopledb.repository.ConnectionProvider;
+import com.ag.peopledb.repository.EntityListener;
+import com.ag.peopledb.repository.PeopleRepository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * In-memory substring search over first name, last name and email of people.
+ * Every value is broken into trigrams plus one- and two-letter word prefixes, each mapped to the sorted IDs
+ * of the people containing it. A query of three or more characters intersects the postings of its trigrams,
+ * a shorter one uses the word prefix postings. Candidates are then checked against the indexed values and ranked:
+ * values starting with the query first, then words starting with it, then plain substrings.
+ * <p>
+ * Register it with {@link PeopleRepository#addListener(EntityListener)} to keep it in sync with the repository.
+ * Writes that are rolled back stay in the index; {@link #findPeople(PeopleRepository, String, int)} skips
+ * IDs that no longer exist. Changes made by other application instances are picked up with
+ * {@link #apply(List, PeopleRepository)}.
+ */
+public class PeopleSearchIndex implements EntityListener<Person> {
+
+    private static final char WORD_START = '\0';
+    private static final char NO_CHAR = Character.MAX_VALUE;
+    private static final int FETCH_SIZE = 1000;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Long, LongPostings> postings = new HashMap<>();
+    private Map<Long, String[]> values = new HashMap<>();
+    // writes heard while a rebuild scans, replayed on the rebuilt index before it replaces this one
+    private List<Consumer<PeopleSearchIndex>> changesDuringRebuild;
+
+    /**
+     * Builds an index from a scan of PEOPLE, split by ID into the given number of partitions
+     * that are read and indexed in parallel, each on its own connection.
+     */
+    public static PeopleSearchIndex build(ConnectionProvider connectionProvider, int partitions) {
+        return build(connectionProvider, partitions, new AdmissionControl());
+    }
+
+    /**
+     * Every partition is read as a {@link OperationClass#SCAN} under the given admission control.
+     */
+    public static PeopleSearchIndex build(ConnectionProvider connectionProvider, int partitions, AdmissionControl admissionControl) {
+        PeopleSearchIndex index = new PeopleSearchIndex();
+        index.rebuild(connectionProvider, partitions, admissionControl);
+        return index;
+    }
+
+    public void rebuild(ConnectionProvider connectionProvider, int partitions) {
+        rebuild(connectionProvider, partitions, new AdmissionControl());
+    }
+
+    /**
+     * Listener calls made while the scan runs are applied to the current index and replayed on the rebuilt one,
+     * so they are not lost when the rebuilt index takes over. Rebuilds of the same index run one at a time.
+     */
+    public synchronized void rebuild(ConnectionProvider connectionProvider, int partitions, AdmissionControl admissionControl) {
+        lock.writeLock().lock();
+        try {
+            changesDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            PeopleSearchIndex rebuilt = scanAll(connectionProvider, partitions, admissionControl);
+            lock.writeLock().lock();
+            try {
+                changesDuringRebuild.forEach(change -> change.accept(rebuilt));
+                postings = rebuilt.postings;
+                values = rebuilt.values;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            lock.writeLock().lock();
+            try {
+                changesDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static PeopleSearchIndex scanAll(ConnectionProvider connectionProvider, int partitions, AdmissionControl admissionControl) {
+        Optional<IdRange> idRange;
+        try (Connection connection = connectionProvider.getConnection()) {
+            PeopleRepository repository = new PeopleRepository(connection);
+            repository.setAdmissionControl(admissionControl);
+            idRange = repository.findIdRange();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Building search index failed. Try again later");
+        }
+
+        PeopleSearchIndex rebuilt = new PeopleSearchIndex();
+        if (idRange.isPresent()) {
+            List<IdRange> ranges = idRange.get().split(partitions);
+            ExecutorService executor = Executors.newFixedThreadPool(ranges.size());
+            try {
+                List<Future<PeopleSearchIndex>> parts = ranges.stream()
+                        .map(range -> executor.submit(() -> scan(connectionProvider, range, admissionControl)))
+                        .toList();
+                for (Future<PeopleSearchIndex> part : parts) {
+                    rebuilt.merge(part.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UnableToSaveException("Building search index interrupted. Try again later");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof OperationRejectedException rejected) throw rejected;
+                e.getCause().printStackTrace();
+                throw new UnableToSaveException("Building search index failed. Try again later");
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        return rebuilt;
+    }
+
+    public void index(long id, String firstName, String lastName, String email) {
+        String[] normalized = {normalize(firstName), normalize(lastName), normalize(email)};
+        lock.writeLock().lock();
+        try {
+            indexUnlocked(id, normalized);
+            if (changesDuringRebuild != null) changesDuringRebuild.add(rebuilt -> rebuilt.indexUnlocked(id, normalized));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(id);
+            if (changesDuringRebuild != null) changesDuringRebuild.add(rebuilt -> rebuilt.removeUnlocked(id));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return values.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the IDs of at most limit people whose first name, last name or email contains the query,
+     * best matches first.
+     */
+    public long[] search(String query, int limit) {
+        String normalizedQuery = normalize(query);
+        if (normalizedQuery == null || limit < 1) return new long[0];
+
+        List<Long> grams = new ArrayList<>();
+        if (normalizedQuery.length() < 3) {
+            grams.add(prefixGram(normalizedQuery));
+        } else {
+            for (int i = 0; i + 3 <= normalizedQuery.length(); i++) {
+                grams.add(gram(normalizedQuery.charAt(i), normalizedQuery.charAt(i + 1), normalizedQuery.charAt(i + 2)));
+            }
+        }
+
+        lock.readLock().lock();
+        try {
+            List<LongPostings> lists = new ArrayList<>(grams.size());
+            for (Long gram : grams) {
+                LongPostings list = postings.get(gram);
+                if (list == null) return new long[0];
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(LongPostings::size));
+
+            PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, Match.WORST_FIRST);
+            LongPostings smallest = lists.get(0);
+            candidates:
+            for (int i = 0; i < smallest.size(); i++) {
+                long id = smallest.get(i);
+                for (int j = 1; j < lists.size(); j++) {
+                    if (!lists.get(j).contains(id)) continue candidates;
+                }
+                Match match = score(id, values.get(id), normalizedQuery);
+                if (match == null) continue;
+                best.add(match);
+                if (best.size() > limit) best.poll();
+            }
+
+            long[] ids = new long[best.size()];
+            for (int i = ids.length - 1; i >= 0; i--) {
+                ids[i] = best.poll().id();
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@link #search(String, int)} followed by one batched lookup of the matching people.
+     */
+    public List<Person> findPeople(PeopleRepository repository, String query, int limit) {
+        long[] ids = search(query, limit);
+        return repository.findAllById(Arrays.stream(ids).boxed().toList());
+    }
+
+    /**
+     * Brings the index up to date with changes read from the change log: deleted people are removed,
+     * inserted and updated ones are loaded with one batched lookup and indexed again.
+     */
+    public void apply(List<Change> changes, PeopleRepository repository) {
+        Set<Long> changedIds = new LinkedHashSet<>();
+        for (Change change : changes) {
+            if (!change.tableName().equals("PEOPLE")) continue;
+            if (change.type() == ChangeType.DELETE) {
+                changedIds.remove(change.rowId());
+                remove(change.rowId());
+            } else {
+                changedIds.add(change.rowId());
+            }
+        }
+        if (changedIds.isEmpty()) return;
+        for (Person person : repository.findAllById(changedIds)) {
+            changedIds.remove(person.getId());
+            onUpdate(person);
+        }
+        changedIds.forEach(this::remove);
+    }
+
+    @Override
+    public void onSave(Person person) {
+        index(person.getId(), person.getFirstName(), person.getLastName(), person.getEmail());
+    }
+
+    @Override
+    public void onUpdate(Person person) {
+        index(person.getId(), person.getFirstName(), person.getLastName(), person.getEmail());
+    }
+
+    @Override
+    public void onDelete(Person person) {
+        remove(person.getId());
+    }
+
+    private static PeopleSearchIndex scan(ConnectionProvider connectionProvider, IdRange range, AdmissionControl admissionControl) throws SQLException {
+        PeopleSearchIndex part = new PeopleSearchIndex();
+        try (AdmissionControl.Permit permit = admissionControl.admit(OperationClass.SCAN);
+             Connection connection = connectionProvider.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(PeopleRepository.SEARCH_INDEX_IN_RANGE_SQL)) {
+            preparedStatement.setFetchSize(FETCH_SIZE);
+            preparedStatement.setLong(1, range.min());
+            preparedStatement.setLong(2, range.max());
+            ResultSet resultSet = permit.execute(preparedStatement, PreparedStatement::executeQuery);
+            while (resultSet.next()) {
+                part.index(resultSet.getLong("ID"), resultSet.getString("FIRST_NAME"),
+                        resultSet.getString("LAST_NAME"), resultSet.getString("EMAIL"));
+            }
+        }
+        return part;
+    }
+
+    /**
+     * Parts are merged in ID order, so their postings are appended rather than inserted.
+     */
+    private void merge(PeopleSearchIndex part) {
+        values.putAll(part.values);
+        part.postings.forEach((gram, list) -> postings.computeIfAbsent(gram, g -> new LongPostings()).addAll(list));
+    }
+
+    private void indexUnlocked(long id, String[] normalized) {
+        removeUnlocked(id);
+        values.put(id, normalized);
+        for (String value : normalized) {
+            forEachGram(value, gram -> postings.computeIfAbsent(gram, g -> new LongPostings()).add(id));
+        }
+    }
+
+    private void removeUnlocked(long id) {
+        String[] previous = values.remove(id);
+        if (previous == null) return;
+        for (String value : previous) {
+            forEachGram(value, gram -> {
+                LongPostings list = postings.get(gram);
+                if (list != null && list.remove(id) && list.size() == 0) {
+                    postings.remove(gram);
+                }
+            });
+        }
+    }
+
+    private static Match score(long id, String[] fields, String query) {
+        int bestRank = 0;
+        int bestLength = Integer.MAX_VALUE;
+        for (String field : fields) {
+            if (field == null) continue;
+            int position = field.indexOf(query);
+            if (position < 0) continue;
+            int rank = position == 0 ? 3 : isWordStart(field, position) ? 2 : 1;
+            if (rank > bestRank || rank == bestRank && field.length() < bestLength) {
+                bestRank = rank;
+                bestLength = field.length();
+            }
+        }
+        return bestRank == 0 ? null : new Match(id, bestRank, bestLength);
+    }
+
+    private static void forEachGram(String value, LongConsumer action) {
+        if (value == null) return;
+        for (int i = 0; i < value.length(); i++) {
+            if (isWordStart(value, i)) {
+                action.accept(gram(WORD_START, value.charAt(i), NO_CHAR));
+                if (i + 1 < value.length()) {
+                    action.accept(gram(WORD_START, value.charAt(i), value.charAt(i + 1)));
+                }
+            }
+            if (i + 3 <= value.length()) {
+                action.accept(gram(value.charAt(i), value.charAt(i + 1), value.charAt(i + 2)));
+            }
+        }
+    }
+
+    private static long prefixGram(String query) {
+        return gram(WORD_START, query.charAt(0), query.length() > 1 ? query.charAt(1) : NO_CHAR);
+    }
+
+    private static long gram(char first, char second, char third) {
+        return ((long) first << 32) | ((long) second << 16) | third;
+    }
+
+    private static boolean isWordStart(String value, int position) {
+        return position == 0 || !Character.isLetterOrDigit(value.charAt(position - 1));
+    }
+
+    private static String normalize(String value) {
+        if (value == null) return null;
+        String normalized = value.strip().toLowerCase(Locale.ROOT);
+        return normalized.isEmpty() ? null : normalized;
+    }
+
+    private record Match(long id, int rank, int length) {
+        static final Comparator<Match> WORST_FIRST = Comparator.comparingInt(Match::rank)
+                .thenComparing(Comparator.comparingInt(Match::length).reversed())
+                .thenComparing(Comparator.comparingLong(Match::id).reversed());
+    }
+}
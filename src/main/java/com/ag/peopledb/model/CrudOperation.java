@@ -1,9 +1,15 @@
 package com.ag.peopledb.model;
 public enum CrudOperation {
     SAVE,
+    UPSERT,
     UPDATE,
     FIND_BY_ID,
     FIND_ALL,
+    FIND_ALL_BY_ID,
+    FIND_ID_RANGE,
+    FIND_ALL_IN_RANGE,
+    PROJECT_BY_ID,
+    PROJECT_ALL,
     DELETE_ONE,
     DELETE_MANY,
     COUNT
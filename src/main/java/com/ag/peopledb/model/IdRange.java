@@ -0,0 +1,35 @@
+package com.ag.peopledb.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inclusive range of IDs, e.g. the MIN(ID)..MAX(ID) of a table.
+ */
+public record IdRange(long min, long max) {
+
+    public IdRange {
+        if (min > max) {
+            throw new IllegalArgumentException(String.format("Invalid ID range: %d..%d", min, max));
+        }
+    }
+
+    /**
+     * Splits the range into at most the given number of contiguous, non-overlapping partitions
+     * in ascending order.
+     */
+    public List<IdRange> split(int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("Number of partitions must be positive: " + partitions);
+        }
+        long width = max - min + 1;
+        long partitionSize = Math.max(1, (width + partitions - 1) / partitions);
+        List<IdRange> ranges = new ArrayList<>(partitions);
+        for (long start = min; start <= max; start += partitionSize) {
+            long end = Math.min(max, start + partitionSize - 1);
+            ranges.add(new IdRange(start, end));
+            if (end == max) break;
+        }
+        return ranges;
+    }
+}
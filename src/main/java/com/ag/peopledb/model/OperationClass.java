@@ -0,0 +1,19 @@
+package com.ag.peopledb.model;
+
+/**
+ * How heavy an operation is on the database, for admission control:
+ * point reads touch a few rows by key, scans read the whole table or a range of it, writes change rows.
+ */
+public enum OperationClass {
+    POINT_READ,
+    SCAN,
+    WRITE;
+
+    public static OperationClass of(CrudOperation operation) {
+        return switch (operation) {
+            case FIND_BY_ID, FIND_ALL_BY_ID, PROJECT_BY_ID, FIND_ID_RANGE -> POINT_READ;
+            case FIND_ALL, FIND_ALL_IN_RANGE, PROJECT_ALL, COUNT -> SCAN;
+            case SAVE, UPSERT, UPDATE, DELETE_ONE, DELETE_MANY -> WRITE;
+        };
+    }
+}
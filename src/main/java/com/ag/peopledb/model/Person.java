@@ -1,6 +1,7 @@
 package com.ag.peopledb.model;
 
 import com.ag.peopledb.anotation.Id;
+import com.ag.peopledb.anotation.Version;
 
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
@@ -12,6 +13,8 @@ import java.util.Set;
 public class Person {
     @Id
     private Long id;
+    @Version
+    private Long version;
 
     private String firstName;
     private String lastName;
@@ -59,6 +62,14 @@ public class Person {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public BigDecimal getSalary() {
         return salary;
     }
@@ -9,11 +9,37 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.joining;
 
 public class AddressRepository extends CRUDRepository<Address> {
 
+    public static final String UPSERT_ADDRESS_SQL = """
+            MERGE INTO ADDRESSES AS TARGET
+            USING (VALUES (CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(1024))))
+            AS SOURCE (STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY, ADDRESS_KEY)
+            ON :key
+            WHEN MATCHED THEN UPDATE SET STREET_ADDRESS = SOURCE.STREET_ADDRESS, ADDRESS2 = SOURCE.ADDRESS2, CITY = SOURCE.CITY, STATE = SOURCE.STATE,
+            POSTCODE = SOURCE.POSTCODE, COUNTY = SOURCE.COUNTY, REGION = SOURCE.REGION, COUNTRY = SOURCE.COUNTRY, ADDRESS_KEY = SOURCE.ADDRESS_KEY
+            WHEN NOT MATCHED THEN INSERT (STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY, ADDRESS_KEY)
+            VALUES (SOURCE.STREET_ADDRESS, SOURCE.ADDRESS2, SOURCE.CITY, SOURCE.STATE, SOURCE.POSTCODE, SOURCE.COUNTY, SOURCE.REGION, SOURCE.COUNTRY, SOURCE.ADDRESS_KEY)
+            """;
+
     public AddressRepository(Connection connection) {
         super(connection);
+        setUpsertKey("ADDRESS_KEY");
+    }
+
+    /**
+     * Natural key of an address: street, second line, city, state, postcode and country,
+     * trimmed, lower case and with runs of whitespace collapsed, so that spelling variants of the same address match.
+     */
+    static String addressKey(Address address) {
+        return Stream.of(address.streetAddress(), address.address2(), address.city(), address.state(), address.postcode(), address.country())
+                .map(part -> part == null ? "" : part.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT))
+                .collect(joining("|"));
     }
 
     @Override
@@ -40,9 +66,10 @@ public class AddressRepository extends CRUDRepository<Address> {
 
     @Override
     @SQL(operationType = CrudOperation.SAVE, value = """
-             INSERT INTO ADDRESSES (STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY)
-             VALUES(?, ?, ?, ?, ?, ?, ?, ?)
+             INSERT INTO ADDRESSES (STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY, ADDRESS_KEY)
+             VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?)
             """)
+    @SQL(operationType = CrudOperation.UPSERT, value = UPSERT_ADDRESS_SQL)
     void mapForSave(Address entity, PreparedStatement preparedStatement) throws SQLException {
             preparedStatement.setString(1, entity.streetAddress());
             preparedStatement.setString(2, entity.address2());
@@ -51,11 +78,25 @@ public class AddressRepository extends CRUDRepository<Address> {
             preparedStatement.setString(5, entity.postcode());
             preparedStatement.setString(6, entity.county());
             preparedStatement.setString(7, entity.region().toString());
-            preparedStatement.setString(8, entity.county());
+            preparedStatement.setString(8, entity.country());
+            preparedStatement.setString(9, addressKey(entity));
     }
 
     @Override
+    @SQL(operationType = CrudOperation.UPDATE, value = """
+            UPDATE ADDRESSES SET STREET_ADDRESS=?, ADDRESS2=?, CITY=?, STATE=?, POSTCODE=?, COUNTY=?, REGION=?, COUNTRY=?, ADDRESS_KEY=?
+            WHERE ID=?
+            """)
+    @SQL(operationType = CrudOperation.DELETE_ONE, value = "DELETE FROM ADDRESSES WHERE ID=?")
     void mapForUpdate(Address entity, PreparedStatement preparedStatement) throws SQLException {
-
+            preparedStatement.setString(1, entity.streetAddress());
+            preparedStatement.setString(2, entity.address2());
+            preparedStatement.setString(3, entity.city());
+            preparedStatement.setString(4, entity.state());
+            preparedStatement.setString(5, entity.postcode());
+            preparedStatement.setString(6, entity.county());
+            preparedStatement.setString(7, entity.region().toString());
+            preparedStatement.setString(8, entity.country());
+            preparedStatement.setString(9, addressKey(entity));
     }
 }
@@ -0,0 +1,209 @@
+package com.ag.peopledb.repository;
+
+import com.ag.peopledb.exeption.OperationRejectedException;
+import com.ag.peopledb.model.OperationClass;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulkheads and statement timeouts for repository operations, grouped by {@link OperationClass},
+ * so that a few heavy scans cannot take all of the database away from point reads and writes.
+ * Share one instance between the repositories of all threads with {@link CRUDRepository#setAdmissionControl(AdmissionControl)}.
+ * <p>
+ * A class with a limit runs at most maxConcurrent operations at once. Up to maxQueued more wait at most maxWait
+ * for a slot; anything beyond that fails at once with {@link OperationRejectedException}, before touching the database.
+ * A class with a query timeout has its statements cancelled by the database when they run longer than that.
+ * Classes without a limit or timeout run freely but are still counted in the {@link Metrics}.
+ * <p>
+ * Repository calls made by a thread that already holds a permit, e.g. saving the children and addresses
+ * of a person, run under that permit. Configure limits and timeouts before the repositories start using it.
+ */
+public class AdmissionControl {
+
+    private static final String QUERY_CANCELLED_STATE = "57014";
+
+    public record Metrics(OperationClass operationClass, long admitted, long rejected, long timedOut, int active, int queued) {
+    }
+
+    private final Map<OperationClass, Bulkhead> bulkheads = new EnumMap<>(OperationClass.class);
+    private final ThreadLocal<Permit> currentPermit = new ThreadLocal<>();
+
+    public AdmissionControl() {
+        for (OperationClass operationClass : OperationClass.values()) {
+            bulkheads.put(operationClass, new Bulkhead(operationClass));
+        }
+    }
+
+    /**
+     * @param maxQueued how many operations may wait for a slot, 0 to reject as soon as all slots are taken
+     * @param maxWait   how long a queued operation waits for a slot before it is rejected
+     */
+    public AdmissionControl limit(OperationClass operationClass, int maxConcurrent, int maxQueued, Duration maxWait) {
+        if (maxConcurrent < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException(String.format("Invalid limit for %s: %d running, %d queued", operationClass, maxConcurrent, maxQueued));
+        }
+        Bulkhead bulkhead = bulkheads.get(operationClass);
+        bulkhead.slots = new Semaphore(maxConcurrent, true);
+        bulkhead.maxQueued = maxQueued;
+        bulkhead.maxWaitNanos = maxWait.toNanos();
+        return this;
+    }
+
+    /**
+     * JDBC timeouts are whole seconds, so the timeout is rounded up to the next second.
+     */
+    public AdmissionControl queryTimeout(OperationClass operationClass, Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("Query timeout must be positive: " + timeout);
+        }
+        bulkheads.get(operationClass).queryTimeoutSeconds = (int) Math.max(1, (timeout.toMillis() + 999) / 1000);
+        return this;
+    }
+
+    public Metrics metrics(OperationClass operationClass) {
+        Bulkhead bulkhead = bulkheads.get(operationClass);
+        return new Metrics(operationClass, bulkhead.admitted.sum(), bulkhead.rejected.sum(), bulkhead.timedOut.sum(),
+                bulkhead.active.get(), bulkhead.queued.get());
+    }
+
+    /**
+     * Takes a slot of the operation class, or joins the permit this thread already holds.
+     * Code outside the repositories that runs its own statements, e.g. exports, uses this to be limited the same way.
+     */
+    public Permit admit(OperationClass operationClass) {
+        Bulkhead bulkhead = bulkheads.get(operationClass);
+        if (currentPermit.get() != null) {
+            return new Permit(this, bulkhead, null, false, false);
+        }
+        Semaphore slots = bulkhead.enter();
+        Permit permit = new Permit(this, bulkhead, slots, true, true);
+        currentPermit.set(permit);
+        return permit;
+    }
+
+    /**
+     * Takes one slot for an operation whose statements run on other threads, e.g. the partition readers
+     * of a parallel scan, which all execute through the returned permit. The permit is not bound to the calling thread,
+     * so its other calls are admitted on their own, and it may be closed from any thread, but only once.
+     */
+    Permit admitShared(OperationClass operationClass) {
+        Bulkhead bulkhead = bulkheads.get(operationClass);
+        if (currentPermit.get() != null) {
+            return new Permit(this, bulkhead, null, false, false);
+        }
+        return new Permit(this, bulkhead, bulkhead.enter(), true, false);
+    }
+
+    public interface StatementCall<S extends Statement, R> {
+        R call(S statement) throws SQLException;
+    }
+
+    /**
+     * Held while an operation runs. Statements of the operation are executed through it,
+     * so that they get the query timeout of its class and timeouts are counted.
+     */
+    public static final class Permit implements AutoCloseable {
+
+        static final Permit NONE = new Permit(null, null, null, false, false);
+
+        private final AdmissionControl admissionControl;
+        private final Bulkhead bulkhead;
+        private final Semaphore slots;
+        private final boolean outermost;
+        private final boolean bound;
+
+        private Permit(AdmissionControl admissionControl, Bulkhead bulkhead, Semaphore slots, boolean outermost, boolean bound) {
+            this.admissionControl = admissionControl;
+            this.bulkhead = bulkhead;
+            this.slots = slots;
+            this.outermost = outermost;
+            this.bound = bound;
+        }
+
+        public <S extends Statement, R> R execute(S statement, StatementCall<S, R> call) throws SQLException {
+            if (bulkhead == null) {
+                return call.call(statement);
+            }
+            statement.setQueryTimeout(bulkhead.queryTimeoutSeconds);
+            try {
+                return call.call(statement);
+            } catch (SQLException e) {
+                if (e instanceof SQLTimeoutException || QUERY_CANCELLED_STATE.equals(e.getSQLState())) {
+                    bulkhead.timedOut.increment();
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!outermost) return;
+            if (bound) admissionControl.currentPermit.remove();
+            bulkhead.leave(slots);
+        }
+    }
+
+    private static final class Bulkhead {
+        private final OperationClass operationClass;
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder timedOut = new LongAdder();
+        private volatile Semaphore slots;
+        private volatile int maxQueued;
+        private volatile long maxWaitNanos;
+        private volatile int queryTimeoutSeconds;
+
+        Bulkhead(OperationClass operationClass) {
+            this.operationClass = operationClass;
+        }
+
+        /**
+         * @return the semaphore a slot was taken from, to give it back to in {@link #leave(Semaphore)}
+         */
+        Semaphore enter() {
+            Semaphore currentSlots = slots;
+            if (currentSlots != null && !currentSlots.tryAcquire()) {
+                if (queued.incrementAndGet() > maxQueued) {
+                    queued.decrementAndGet();
+                    throw reject();
+                }
+                try {
+                    if (!currentSlots.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)) {
+                        throw reject();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw reject();
+                } finally {
+                    queued.decrementAndGet();
+                }
+            }
+            admitted.increment();
+            active.incrementAndGet();
+            return currentSlots;
+        }
+
+        void leave(Semaphore takenSlots) {
+            active.decrementAndGet();
+            if (takenSlots != null) {
+                takenSlots.release();
+            }
+        }
+
+        private OperationRejectedException reject() {
+            rejected.increment();
+            return new OperationRejectedException(operationClass);
+        }
+    }
+}
@@ -3,27 +3,94 @@ package com.ag.peopledb.repository;
 import com.ag.peopledb.anotation.Id;
 import com.ag.peopledb.anotation.MultiSQL;
 import com.ag.peopledb.anotation.SQL;
+import com.ag.peopledb.anotation.Version;
+import com.ag.peopledb.exeption.OptimisticLockException;
 import com.ag.peopledb.exeption.UnableToSaveException;
 import com.ag.peopledb.model.CrudOperation;
+import com.ag.peopledb.model.IdRange;
+import com.ag.peopledb.model.OperationClass;
 
+import java.lang.reflect.Field;
 import java.sql.*;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Optional;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static java.util.stream.Collectors.joining;
 
 abstract class CRUDRepository<T> {
 
+    private static final int FIND_ALL_BY_ID_CHUNK_SIZE = 1000;
+    // H2 delta table: the rows a DELETE removed
+    private static final String DELETED_IDS_SQL = "SELECT ID FROM OLD TABLE (%s)";
+    private static final Pattern COLUMN_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
     protected Connection connection;
 
+    private List<String> upsertKey = List.of();
+    private AdmissionControl admissionControl;
+
+    private final List<EntityListener<T>> listeners = new CopyOnWriteArrayList<>();
+
     public CRUDRepository(Connection connection) {
         this.connection = connection;
     }
 
+    /**
+     * Sets the natural key columns that {@link #upsert(Object)} matches existing rows on.
+     */
+    public void setUpsertKey(String... columns) {
+        if (columns.length == 0) {
+            throw new IllegalArgumentException("Upsert key needs at least one column");
+        }
+        for (String column : columns) {
+            if (!COLUMN_NAME.matcher(column).matches()) {
+                throw new IllegalArgumentException("Invalid column name: " + column);
+            }
+        }
+        upsertKey = List.of(columns);
+    }
+
+    public List<String> getUpsertKey() {
+        return upsertKey;
+    }
+
+    /**
+     * Puts this repository's operations under the given admission control, null to run them freely.
+     */
+    public void setAdmissionControl(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    public AdmissionControl getAdmissionControl() {
+        return admissionControl;
+    }
+
+    AdmissionControl.Permit admit(OperationClass operationClass) {
+        return admissionControl == null ? AdmissionControl.Permit.NONE : admissionControl.admit(operationClass);
+    }
+
+    private AdmissionControl.Permit admit(CrudOperation operation) {
+        return admit(OperationClass.of(operation));
+    }
+
+    private AdmissionControl.Permit admitShared(CrudOperation operation) {
+        return admissionControl == null ? AdmissionControl.Permit.NONE : admissionControl.admitShared(OperationClass.of(operation));
+    }
+
+    public void addListener(EntityListener<T> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(EntityListener<T> listener) {
+        listeners.remove(listener);
+    }
+
 
     private String getSQLByAnnotation(CrudOperation operationType, Supplier<String> sqlGetter){
 
@@ -43,16 +110,18 @@ abstract class CRUDRepository<T> {
     };
 
     public T save(T entity) throws UnableToSaveException {
-        try {
+        try (AdmissionControl.Permit permit = admit(CrudOperation.SAVE)) {
             PreparedStatement preparedStatement = connection.prepareStatement(getSQLByAnnotation(CrudOperation.SAVE, this::getSaveSQL), Statement.RETURN_GENERATED_KEYS);
 
             mapForSave(entity, preparedStatement);
-            int update = preparedStatement.executeUpdate();
+            int update = permit.execute(preparedStatement, PreparedStatement::executeUpdate);
             ResultSet generatedKeys = preparedStatement.getGeneratedKeys();
             while (generatedKeys.next()){
                 long id = generatedKeys.getLong(1);
                 setIdByAnnotation(id, entity);
+                setInitialVersion(entity);
                 postSave(entity, id);
+                listeners.forEach(listener -> listener.onSave(entity));
                 System.out.println(entity);
             }
             System.out.printf("Records affected: %d%n", update );
@@ -63,13 +132,127 @@ abstract class CRUDRepository<T> {
         return entity;
     }
 
+    /**
+     * Saves all entities with one JDBC batch and sets their generated IDs.
+     */
+    public Collection<T> saveAll(Collection<T> entities) throws UnableToSaveException {
+        return saveAll(entities, true);
+    }
+
+    /**
+     * @param cascade whether to call {@link #postSave(Object, long)}, e.g. to save the children of a person
+     */
+    Collection<T> saveAll(Collection<T> entities, boolean cascade) throws UnableToSaveException {
+        if (entities.isEmpty()) return entities;
+        try (AdmissionControl.Permit permit = admit(CrudOperation.SAVE)) {
+            PreparedStatement preparedStatement = connection.prepareStatement(getSQLByAnnotation(CrudOperation.SAVE, this::getSaveSQL), Statement.RETURN_GENERATED_KEYS);
+            for (T entity : entities) {
+                mapForSave(entity, preparedStatement);
+                preparedStatement.addBatch();
+            }
+            permit.execute(preparedStatement, PreparedStatement::executeBatch);
+            ResultSet generatedKeys = preparedStatement.getGeneratedKeys();
+            Iterator<T> savedEntities = entities.iterator();
+            while (generatedKeys.next() && savedEntities.hasNext()){
+                T entity = savedEntities.next();
+                long id = generatedKeys.getLong(1);
+                setIdByAnnotation(id, entity);
+                setInitialVersion(entity);
+                if (cascade) {
+                    postSave(entity, id);
+                }
+                listeners.forEach(listener -> listener.onSave(entity));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Saving new entities failed: " + entities.size());
+        }
+        return entities;
+    }
+
+    public T upsert(T entity) throws UnableToSaveException {
+        upsertAll(List.of(entity));
+        return entity;
+    }
+
+    /**
+     * Inserts every entity that has no row with the same upsert key yet and updates the row otherwise,
+     * with one JDBC batch, so re-running an import does not create duplicates.
+     * Sets the generated or existing ID (and the current version) on each entity.
+     * Entities whose key columns are null never match and are always inserted.
+     */
+    public Collection<T> upsertAll(Collection<T> entities) throws UnableToSaveException {
+        return upsertAll(entities, upsertKey);
+    }
+
+    /**
+     * Same as {@link #upsertAll(Collection)}, but matches existing rows on the given columns instead of the upsert key.
+     */
+    protected Collection<T> upsertAll(Collection<T> entities, List<String> key) throws UnableToSaveException {
+        if (entities.isEmpty()) return entities;
+        Optional<Field> versionField = getVersionField(entities.iterator().next());
+        String[] returnedColumns = versionField.isPresent() ? new String[]{"ID", "VERSION"} : new String[]{"ID"};
+        try (AdmissionControl.Permit permit = admit(CrudOperation.UPSERT)) {
+            PreparedStatement preparedStatement = connection.prepareStatement(getUpsertSQLWithKey(key), returnedColumns);
+            for (T entity : entities) {
+                mapForUpsert(entity, preparedStatement);
+                preparedStatement.addBatch();
+            }
+            int[] affectedRows = permit.execute(preparedStatement, PreparedStatement::executeBatch);
+            ResultSet generatedKeys = preparedStatement.getGeneratedKeys();
+            Iterator<T> upsertedEntities = entities.iterator();
+            for (int affected : affectedRows) {
+                T entity = upsertedEntities.next();
+                // a key that is not unique updates several rows; the entity takes the first of them
+                for (int row = 0; row < affected; row++) {
+                    generatedKeys.next();
+                    if (row > 0) continue;
+                    setIdByAnnotation(generatedKeys.getLong(1), entity);
+                    versionField.ifPresent(f -> setVersion(f, entity, getLong(generatedKeys, 2)));
+                }
+            }
+            for (T entity : entities) {
+                postUpsert(entity, getIdByAnnotation(entity));
+                boolean inserted = versionField.map(f -> getVersion(f, entity) == 0).orElse(true);
+                listeners.forEach(listener -> {
+                    if (inserted) listener.onSave(entity); else listener.onUpdate(entity);
+                });
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Upserting entities failed: " + entities.size());
+        }
+        return entities;
+    }
+
+    /**
+     * Replaces ":key" in the upsert SQL with "TARGET.COLUMN = SOURCE.COLUMN" for every key column.
+     */
+    private String getUpsertSQLWithKey(List<String> key) {
+        if (key.isEmpty()) {
+            throw new RuntimeException("Upsert key not defined.");
+        }
+        String condition = key.stream()
+                .map(column -> String.format("TARGET.%1$s = SOURCE.%1$s", column))
+                .collect(joining(" AND "));
+        return getSQLByAnnotation(CrudOperation.UPSERT, this::getUpsertSQL).replace(":key", condition);
+    }
+
+    private static long getLong(ResultSet resultSet, int column) {
+        try {
+            return resultSet.getLong(column);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public Optional<T> findById(Long id) {
         T entity = null;
 
-        try {
+        try (AdmissionControl.Permit permit = admit(CrudOperation.FIND_BY_ID)) {
             PreparedStatement preparedStatement = connection.prepareStatement(getSQLByAnnotation(CrudOperation.FIND_BY_ID, this::getFindByIdSQL));
             preparedStatement.setLong(1, id);
-            ResultSet resultSet = preparedStatement.executeQuery();
+            ResultSet resultSet = permit.execute(preparedStatement, PreparedStatement::executeQuery);
             while (resultSet.next()) {
                 entity = extractEntityFromResultSet(resultSet);
             }
@@ -80,13 +263,75 @@ abstract class CRUDRepository<T> {
         return Optional.ofNullable(entity);
     }
 
+    /**
+     * Reads the entities with the given IDs in as few round trips as possible and returns them in the order of the IDs.
+     * IDs that do not exist are skipped.
+     */
+    public List<T> findAllById(Collection<Long> ids) {
+        Map<Long, T> entitiesById = new HashMap<>();
+        List<Long> idList = new ArrayList<>(ids);
+        try (AdmissionControl.Permit permit = admit(CrudOperation.FIND_ALL_BY_ID)) {
+            for (int from = 0; from < idList.size(); from += FIND_ALL_BY_ID_CHUNK_SIZE) {
+                String idsParameter = idList.subList(from, Math.min(idList.size(), from + FIND_ALL_BY_ID_CHUNK_SIZE)).stream()
+                        .map(String::valueOf)
+                        .collect(joining(","));
+                String sql = getSQLByAnnotation(CrudOperation.FIND_ALL_BY_ID, this::getFindAllByIdSQL).replace(":ids", idsParameter);
+                ResultSet resultSet = permit.execute(connection.createStatement(), statement -> statement.executeQuery(sql));
+                while (resultSet.next()) {
+                    T entity = extractEntityFromScan(resultSet);
+                    entitiesById.put(getIdByAnnotation(entity), entity);
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Nothing has been found. Try again later");
+        }
+        return idList.stream()
+                .map(entitiesById::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    /**
+     * Reads only the columns of the given record (see {@link RecordMapper}) instead of the whole entity.
+     * columns optionally overrides the column of each record component, in component order.
+     */
+    public <R extends Record> Optional<R> findById(Long id, Class<R> projection, String... columns) {
+        RecordMapper<R> recordMapper = RecordMapper.of(projection, columns);
+        try (AdmissionControl.Permit permit = admit(CrudOperation.PROJECT_BY_ID)) {
+            PreparedStatement preparedStatement = connection.prepareStatement(getSQLByAnnotation(CrudOperation.PROJECT_BY_ID, this::getProjectByIdSQL).replace(":columns", recordMapper.selectList()));
+            preparedStatement.setLong(1, id);
+            ResultSet resultSet = permit.execute(preparedStatement, PreparedStatement::executeQuery);
+            return resultSet.next() ? Optional.of(recordMapper.map(resultSet)) : Optional.empty();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Nothing has been found. Try again later");
+        }
+    }
+
+    public <R extends Record> List<R> findAll(Class<R> projection, String... columns) {
+        RecordMapper<R> recordMapper = RecordMapper.of(projection, columns);
+        List<R> records = new ArrayList<>();
+        try (AdmissionControl.Permit permit = admit(CrudOperation.PROJECT_ALL)) {
+            PreparedStatement preparedStatement = connection.prepareStatement(getSQLByAnnotation(CrudOperation.PROJECT_ALL, this::getProjectAllSQL).replace(":columns", recordMapper.selectList()));
+            ResultSet resultSet = permit.execute(preparedStatement, PreparedStatement::executeQuery);
+            while (resultSet.next()) {
+                records.add(recordMapper.map(resultSet));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Nothing has been found. Try again later");
+        }
+        return records;
+    }
+
     public List<T> findAll(){
         List<T> entities = new ArrayList<>();
-        try {
+        try (AdmissionControl.Permit permit = admit(CrudOperation.FIND_ALL)) {
             PreparedStatement preparedStatement = connection.prepareStatement(getSQLByAnnotation(CrudOperation.FIND_ALL, this::getFindAllSQL));
-            ResultSet resultSet = preparedStatement.executeQuery();
+            ResultSet resultSet = permit.execute(preparedStatement, PreparedStatement::executeQuery);
             while (resultSet.next()){
-                entities.add(extractEntityFromResultSet(resultSet));
+                entities.add(extractEntityFromScan(resultSet));
             }
 
         } catch (SQLException e) {
@@ -96,11 +341,69 @@ abstract class CRUDRepository<T> {
         return entities;
     };
 
+    public Optional<IdRange> findIdRange() {
+        try (AdmissionControl.Permit permit = admit(CrudOperation.FIND_ID_RANGE)) {
+            PreparedStatement preparedStatement = connection.prepareStatement(getSQLByAnnotation(CrudOperation.FIND_ID_RANGE, this::getFindIdRangeSQL));
+            ResultSet resultSet = permit.execute(preparedStatement, PreparedStatement::executeQuery);
+            if (resultSet.next()) {
+                long min = resultSet.getLong(1);
+                if (!resultSet.wasNull()) {
+                    return Optional.of(new IdRange(min, resultSet.getLong(2)));
+                }
+            }
+            return Optional.empty();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Nothing has been found. Try again later");
+        }
+    }
+
+    public Stream<T> findAllParallel(ConnectionProvider connectionProvider) {
+        return findAllParallel(connectionProvider, Runtime.getRuntime().availableProcessors(), true);
+    }
+
+    /**
+     * Reads the whole table using several connections at once.
+     * MIN(ID)..MAX(ID) is split into the given number of partitions and each partition is read
+     * on its own connection taken from the connectionProvider.
+     * If ordered is true entities come out in ID order, otherwise in the order they are read.
+     * Rows are streamed through bounded queues, see {@link PartitionedScan}, so the stream has to be closed
+     * when it is not read to the end, e.g. with try-with-resources.
+     * The whole scan is admitted as one operation however many partitions it has, and gives its slot back
+     * once every partition reader has stopped.
+     */
+    public Stream<T> findAllParallel(ConnectionProvider connectionProvider, int partitions, boolean ordered) {
+        Optional<IdRange> idRange = findIdRange();
+        if (idRange.isEmpty()) {
+            return Stream.empty();
+        }
+        List<IdRange> ranges = idRange.get().split(partitions);
+        AdmissionControl.Permit permit = admitShared(CrudOperation.FIND_ALL_IN_RANGE);
+        PartitionedScan<T> scan = new PartitionedScan<>(ranges, ordered,
+                (range, sink) -> findAllInRange(connectionProvider, permit, range, sink), permit::close);
+        int characteristics = ordered ? Spliterator.ORDERED | Spliterator.NONNULL : Spliterator.NONNULL;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(scan, characteristics), false)
+                .onClose(scan::close);
+    }
+
+    private void findAllInRange(ConnectionProvider connectionProvider, AdmissionControl.Permit permit, IdRange range,
+                                PartitionedScan.RowSink<T> sink) throws SQLException, InterruptedException {
+        try (Connection partitionConnection = connectionProvider.getConnection()) {
+            PreparedStatement preparedStatement = partitionConnection.prepareStatement(getSQLByAnnotation(CrudOperation.FIND_ALL_IN_RANGE, this::getFindAllInRangeSQL));
+            preparedStatement.setLong(1, range.min());
+            preparedStatement.setLong(2, range.max());
+            ResultSet resultSet = permit.execute(preparedStatement, PreparedStatement::executeQuery);
+            while (resultSet.next()) {
+                sink.accept(extractEntityFromScan(resultSet));
+            }
+        }
+    }
+
     public long count(){
         long count = 0;
-        try {
+        try (AdmissionControl.Permit permit = admit(CrudOperation.COUNT)) {
             PreparedStatement preparedStatement = connection.prepareStatement(getSQLByAnnotation(CrudOperation.COUNT, this::getCountSQL));
-            ResultSet resultSet = preparedStatement.executeQuery();
+            ResultSet resultSet = permit.execute(preparedStatement, PreparedStatement::executeQuery);
             if (resultSet.next()){
                 count = resultSet.getLong(1);
             }
@@ -111,6 +414,20 @@ abstract class CRUDRepository<T> {
         }
     }
 
+    /**
+     * Remembers the ID and version the entity has now. The returned restorer puts them back,
+     * e.g. after the transaction that generated or bumped them has been rolled back.
+     */
+    Runnable rememberGeneratedState(T entity) {
+        Long id = getIdByAnnotation(entity);
+        Optional<Field> versionField = getVersionField(entity);
+        Long version = versionField.isPresent() ? readVersion(versionField.get(), entity) : null;
+        return () -> {
+            setIdByAnnotation(id, entity);
+            versionField.ifPresent(f -> setVersion(f, entity, version));
+        };
+    }
+
     private void setIdByAnnotation(Long id, T entity){
         Arrays.stream(entity.getClass().getDeclaredFields())
                 .filter(f->f.isAnnotationPresent(Id.class))
@@ -125,27 +442,29 @@ abstract class CRUDRepository<T> {
     };
 
 
-    private Long getIdByAnnotation(T entity) {
-        return Arrays.stream(entity.getClass().getDeclaredFields())
+    /**
+     * @return the ID of the entity, null if it has not been saved
+     */
+    Long getIdByAnnotation(T entity) {
+        Field idField = Arrays.stream(entity.getClass().getDeclaredFields())
                 .filter(f->f.isAnnotationPresent(Id.class))
-                .map(f -> {
-                    f.setAccessible(true);
-                    Long id = null;
-                    try {
-                        id = (long)f.get(entity);
-                    } catch (IllegalAccessException e) {
-                        throw new RuntimeException(e);
-                    }
-                    return id;
-                })
                 .findFirst().orElseThrow(() -> new RuntimeException("No Id annotated field found"));
+        idField.setAccessible(true);
+        try {
+            return (Long) idField.get(entity);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     public void delete(T entity) {
-        try {
+        listeners.forEach(listener -> listener.beforeDelete(List.of(entity)));
+        try (AdmissionControl.Permit permit = admit(CrudOperation.DELETE_ONE)) {
             PreparedStatement preparedStatement = connection.prepareStatement(getSQLByAnnotation(CrudOperation.DELETE_ONE, this::getDeleteSQL));
-            preparedStatement.setLong(1, getIdByAnnotation(entity));
-            int result = preparedStatement.executeUpdate();
+            bindIdAndVersion(entity, preparedStatement, getParameterCount(preparedStatement));
+            int result = permit.execute(preparedStatement, PreparedStatement::executeUpdate);
+            checkVersion(entity, result);
+            listeners.forEach(listener -> listener.onDelete(entity));
             System.out.println(result + " - Deleted entity");
         } catch (SQLException e) {
             e.printStackTrace();
@@ -153,12 +472,28 @@ abstract class CRUDRepository<T> {
         }
     }
 
+    /**
+     * Deletes the entities with one statement. Entities with a @Version are deleted through {@link #deleteAll(Collection)}
+     * instead, so that every row is checked against its own version. Listeners only hear about rows that were deleted.
+     */
     public void delete(T...entities){
-        try {
+        if (entities.length == 0) return;
+        if (getVersionField(entities[0]).isPresent()) {
+            deleteAll(Arrays.asList(entities));
+            return;
+        }
+        listeners.forEach(listener -> listener.beforeDelete(Arrays.asList(entities)));
+        try (AdmissionControl.Permit permit = admit(CrudOperation.DELETE_MANY)) {
             String ids = Arrays.stream(entities).map(this::getIdByAnnotation).map(String::valueOf).collect(joining(","));
-            Statement statement = connection.createStatement();
-            int deletedRecordsCount = statement.executeUpdate(getSQLByAnnotation(CrudOperation.DELETE_MANY, this::getDeleteInSQL).replace(":ids", ids));
-            System.out.println(deletedRecordsCount + " === deletedRecordsCount");
+            String sql = String.format(DELETED_IDS_SQL, getSQLByAnnotation(CrudOperation.DELETE_MANY, this::getDeleteInSQL).replace(":ids", ids));
+            ResultSet deletedRows = permit.execute(connection.createStatement(), statement -> statement.executeQuery(sql));
+            Set<Long> deletedIds = new HashSet<>();
+            while (deletedRows.next()) {
+                deletedIds.add(deletedRows.getLong(1));
+            }
+            Arrays.stream(entities)
+                    .filter(entity -> deletedIds.contains(getIdByAnnotation(entity)))
+                    .forEach(entity -> listeners.forEach(listener -> listener.onDelete(entity)));
         } catch (SQLException e) {
             e.printStackTrace();
             throw new UnableToSaveException("Multiple deleting failed. Try again later");
@@ -166,22 +501,181 @@ abstract class CRUDRepository<T> {
     }
 
     public void update(T entity) {
-        try {
+        try (AdmissionControl.Permit permit = admit(CrudOperation.UPDATE)) {
             PreparedStatement preparedStatement = connection.prepareStatement(getSQLByAnnotation(CrudOperation.UPDATE, this::getUpdateSQL));
             mapForUpdate(entity, preparedStatement);
-            preparedStatement.setLong(5, getIdByAnnotation(entity));
-            preparedStatement.executeUpdate();
+            bindIdAndVersion(entity, preparedStatement, getParameterCount(preparedStatement));
+            int result = permit.execute(preparedStatement, PreparedStatement::executeUpdate);
+            checkVersion(entity, result);
+            incrementVersion(entity);
+            listeners.forEach(listener -> listener.onUpdate(entity));
         } catch (SQLException e) {
             e.printStackTrace();
             throw new UnableToSaveException("Updating failed. Try again later");
         }
     }
 
+    /**
+     * Reads the entity, applies the changes and updates it. If somebody else updated it in the meantime
+     * the entity is read again and the changes are applied to the fresh copy, at most maxAttempts times in total.
+     * The changes must therefore be safe to apply more than once, e.g. "set salary to X" rather than "add X to salary".
+     */
+    public T updateWithRetry(Long id, Consumer<T> changes, int maxAttempts) {
+        for (int attempt = 1; ; attempt++) {
+            T entity = findById(id).orElseThrow(() -> new UnableToSaveException("Nothing has been found. Try again later"));
+            changes.accept(entity);
+            try {
+                update(entity);
+                return entity;
+            } catch (OptimisticLockException e) {
+                if (attempt >= maxAttempts) throw e;
+            }
+        }
+    }
+
+
+
 
+    /**
+     * Updates all entities with one JDBC batch.
+     */
+    public void updateAll(Collection<T> entities) {
+        if (entities.isEmpty()) return;
+        try (AdmissionControl.Permit permit = admit(CrudOperation.UPDATE)) {
+            PreparedStatement preparedStatement = connection.prepareStatement(getSQLByAnnotation(CrudOperation.UPDATE, this::getUpdateSQL));
+            int parameterCount = getParameterCount(preparedStatement);
+            for (T entity : entities) {
+                mapForUpdate(entity, preparedStatement);
+                bindIdAndVersion(entity, preparedStatement, parameterCount);
+                preparedStatement.addBatch();
+            }
+            checkVersions(entities, permit.execute(preparedStatement, PreparedStatement::executeBatch));
+            entities.forEach(this::incrementVersion);
+            entities.forEach(entity -> listeners.forEach(listener -> listener.onUpdate(entity)));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Updating failed. Try again later");
+        }
+    }
+
+    private static int getParameterCount(PreparedStatement preparedStatement) throws SQLException {
+        return preparedStatement.getParameterMetaData().getParameterCount();
+    }
 
+    /**
+     * Update and delete SQL must end with "WHERE ID=?", or with "WHERE ID=? AND VERSION=?" for entities with a @Version.
+     */
+    private void bindIdAndVersion(T entity, PreparedStatement preparedStatement, int parameterCount) throws SQLException {
+        Optional<Field> versionField = getVersionField(entity);
+        if (versionField.isPresent()) {
+            preparedStatement.setLong(parameterCount - 1, getIdByAnnotation(entity));
+            preparedStatement.setLong(parameterCount, getVersion(versionField.get(), entity));
+        } else {
+            preparedStatement.setLong(parameterCount, getIdByAnnotation(entity));
+        }
+    }
+
+    private void checkVersion(T entity, int affectedRows) {
+        Optional<Field> versionField = getVersionField(entity);
+        if (versionField.isPresent() && affectedRows == 0) {
+            throw new OptimisticLockException(entity, getIdByAnnotation(entity), getVersion(versionField.get(), entity));
+        }
+    }
+
+    private void checkVersions(Collection<T> entities, int[] affectedRows) {
+        Iterator<T> iterator = entities.iterator();
+        for (int i = 0; i < affectedRows.length && iterator.hasNext(); i++) {
+            checkVersion(iterator.next(), affectedRows[i]);
+        }
+    }
+
+    private void setInitialVersion(T entity) {
+        getVersionField(entity).ifPresent(f -> setVersion(f, entity, 0L));
+    }
+
+    private void incrementVersion(T entity) {
+        getVersionField(entity).ifPresent(f -> setVersion(f, entity, getVersion(f, entity) + 1));
+    }
+
+    private Optional<Field> getVersionField(T entity) {
+        return Arrays.stream(entity.getClass().getDeclaredFields())
+                .filter(f -> f.isAnnotationPresent(Version.class))
+                .peek(f -> f.setAccessible(true))
+                .findFirst();
+    }
+
+    private long getVersion(Field versionField, T entity) {
+        try {
+            Long version = (Long) versionField.get(entity);
+            return version == null ? 0 : version;
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Long readVersion(Field versionField, T entity) {
+        try {
+            return (Long) versionField.get(entity);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void setVersion(Field versionField, T entity, Long version) {
+        try {
+            versionField.set(entity, version);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Unable to set field value" + e);
+        }
+    }
+
+    /**
+     * Deletes the entities one by one, in the given order, but with one JDBC batch.
+     * The order of the deletes is kept, e.g. children before their parents. Listeners hear about the rows that were
+     * deleted, then an {@link OptimisticLockException} is thrown if a versioned entity was stale.
+     */
+    public void deleteAll(Collection<T> entities) {
+        if (entities.isEmpty()) return;
+        listeners.forEach(listener -> listener.beforeDelete(entities));
+        try (AdmissionControl.Permit permit = admit(CrudOperation.DELETE_ONE)) {
+            PreparedStatement preparedStatement = connection.prepareStatement(getSQLByAnnotation(CrudOperation.DELETE_ONE, this::getDeleteSQL));
+            int parameterCount = getParameterCount(preparedStatement);
+            for (T entity : entities) {
+                bindIdAndVersion(entity, preparedStatement, parameterCount);
+                preparedStatement.addBatch();
+            }
+            int[] affectedRows = permit.execute(preparedStatement, PreparedStatement::executeBatch);
+            Iterator<T> deletedEntities = entities.iterator();
+            for (int affected : affectedRows) {
+                T entity = deletedEntities.next();
+                if (affected > 0) listeners.forEach(listener -> listener.onDelete(entity));
+            }
+            checkVersions(entities, affectedRows);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Multiple deleting failed. Try again later");
+        }
+    }
+
+    /**
+     * Switches writes to write-behind: {@link WriteBehindBuffer#save(Object)} and {@link WriteBehindBuffer#update(Object)}
+     * return at once and the entities are written later in batches through this repository.
+     */
+    public WriteBehindBuffer<T> writeBehind(int capacity, int batchSize, Duration flushInterval,
+                                            WriteBehindBuffer.BackpressurePolicy backpressurePolicy) {
+        return new WriteBehindBuffer<>(this, capacity, batchSize, flushInterval, backpressurePolicy);
+    }
 
     abstract T extractEntityFromResultSet(ResultSet resultSet) throws SQLException;
 
+    /**
+     * Maps the current row of a flat, one-row-per-entity scan (FIND_ALL, FIND_ALL_IN_RANGE).
+     * Must not move the cursor.
+     */
+    T extractEntityFromScan(ResultSet resultSet) throws SQLException {
+        return extractEntityFromResultSet(resultSet);
+    }
+
     /**
      * Returns a string that represents a SQL needed to retrieve one entity
      * The SQL must contain one SQL parameter i.e. "?" that would bind to entity's ID
@@ -192,6 +686,13 @@ abstract class CRUDRepository<T> {
 
     abstract void mapForUpdate(T entity, PreparedStatement preparedStatement) throws SQLException;
 
+    /**
+     * Binds the parameters of the upsert SQL, by default in the same order as {@link #mapForSave(Object, PreparedStatement)}.
+     */
+    void mapForUpsert(T entity, PreparedStatement preparedStatement) throws SQLException {
+        mapForSave(entity, preparedStatement);
+    }
+
     protected String getDeleteInSQL(){ throw new RuntimeException("SQL Not defined.");};
 
     /**
@@ -199,10 +700,42 @@ abstract class CRUDRepository<T> {
      */
     protected String getDeleteSQL(){ throw new RuntimeException("SQL Not defined.");};
 
+    /**
+     * should return a string like
+     * "MERGE INTO PEOPLE AS TARGET USING (VALUES (CAST(? AS VARCHAR(255)), ...)) AS SOURCE (EMAIL, ...) ON :key
+     * WHEN MATCHED THEN UPDATE SET ... WHEN NOT MATCHED THEN INSERT (...) VALUES (SOURCE.EMAIL, ...)"
+     */
+    protected String getUpsertSQL(){ throw new RuntimeException("SQL Not defined.");};
+
     protected String getCountSQL(){ throw new RuntimeException("SQL Not defined.");};
 
     protected String getFindAllSQL(){ throw new RuntimeException("SQL Not defined.");};
 
+    /**
+     * should return a string like "SELECT ... FROM PEOPLE WHERE ID IN (:ids)"
+     */
+    protected String getFindAllByIdSQL(){ throw new RuntimeException("SQL Not defined.");};
+
+    /**
+     * should return a string like "SELECT :columns FROM PEOPLE WHERE ID = ?"
+     */
+    protected String getProjectByIdSQL(){ throw new RuntimeException("SQL Not defined.");};
+
+    /**
+     * should return a string like "SELECT :columns FROM PEOPLE"
+     */
+    protected String getProjectAllSQL(){ throw new RuntimeException("SQL Not defined.");};
+
+    /**
+     * should return a string like "SELECT MIN(ID), MAX(ID) FROM PEOPLE"
+     */
+    protected String getFindIdRangeSQL(){ throw new RuntimeException("SQL Not defined.");};
+
+    /**
+     * should return a string like "SELECT ... FROM PEOPLE WHERE ID BETWEEN ? AND ?"
+     */
+    protected String getFindAllInRangeSQL(){ throw new RuntimeException("SQL Not defined.");};
+
     protected String getFindByIdSQL(){ return "";};
 
 
@@ -214,6 +747,9 @@ abstract class CRUDRepository<T> {
         return "";
     };
 
+    protected void postUpsert(T entity, long id) {
+    }
+
     protected void postSave(T entity, long id) {
 
     }
@@ -0,0 +1,13 @@
+package com.ag.peopledb.repository;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Hands out a new, independent connection to the same database.
+ * Used by operations that spread work over several connections, e.g. the parallel scan.
+ */
+@FunctionalInterface
+public interface ConnectionProvider {
+    Connection getConnection() throws SQLException;
+}
@@ -0,0 +1,26 @@
+package com.ag.peopledb.repository;
+
+import java.util.Collection;
+
+/**
+ * Gets told about every entity a repository has written, e.g. to keep an in-memory index in sync.
+ * Called on the writing thread after the statement succeeded, but possibly before the transaction commits.
+ */
+public interface EntityListener<T> {
+
+    default void onSave(T entity) {
+    }
+
+    default void onUpdate(T entity) {
+    }
+
+    /**
+     * Called before the entities are deleted, while their rows can still be read.
+     * Not every entity passed here is necessarily deleted afterwards.
+     */
+    default void beforeDelete(Collection<T> entities) {
+    }
+
+    default void onDelete(T entity) {
+    }
+}
@@ -0,0 +1,149 @@
+package com.ag.peopledb.repository;
+
+import com.ag.peopledb.exeption.UnableToSaveException;
+import com.ag.peopledb.model.IdRange;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads ID ranges in parallel, one reader per range, and hands their rows to a single consumer through bounded queues.
+ * A reader that is ahead of the consumer waits until there is room again, so however big the table is,
+ * at most {@link #QUEUE_CAPACITY} rows per range are held in memory.
+ * <p>
+ * In ID order every range has its own queue and they are drained one after another,
+ * otherwise all readers share one queue and rows come out as they are read.
+ * {@link #close()} stops the readers, which then release their connections.
+ * Once the last reader has stopped, whether it read its range to the end or was stopped, onReadersDone runs.
+ */
+class PartitionedScan<T> implements Iterator<T>, AutoCloseable {
+
+    static final int QUEUE_CAPACITY = 1024;
+    private static final long CANCEL_CHECK_MILLIS = 100;
+    private static final Object END = new Object();
+
+    private static final ExecutorService READERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "partition-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    interface RangeReader<T> {
+        void read(IdRange range, RowSink<T> sink) throws Exception;
+    }
+
+    interface RowSink<T> {
+        void accept(T row) throws InterruptedException;
+    }
+
+    private record Failure(Exception exception) {
+    }
+
+    private final List<BlockingQueue<Object>> queues = new ArrayList<>();
+    private final int partitions;
+    private final boolean ordered;
+    private final AtomicInteger runningReaders;
+    private final Runnable onReadersDone;
+    private volatile boolean cancelled;
+    private int finished;
+    private Object next;
+
+    PartitionedScan(List<IdRange> ranges, boolean ordered, RangeReader<T> reader, Runnable onReadersDone) {
+        this.partitions = ranges.size();
+        this.ordered = ordered;
+        this.runningReaders = new AtomicInteger(partitions);
+        this.onReadersDone = onReadersDone;
+        BlockingQueue<Object> sharedQueue = ordered ? null : new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        if (!ordered) queues.add(sharedQueue);
+        for (IdRange range : ranges) {
+            BlockingQueue<Object> queue = ordered ? new ArrayBlockingQueue<>(QUEUE_CAPACITY) : sharedQueue;
+            if (ordered) queues.add(queue);
+            READERS.execute(() -> read(range, queue, reader));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null) {
+            if (finished == partitions) return false;
+            Object element = take(queues.get(ordered ? finished : 0));
+            if (element == END) {
+                finished++;
+            } else if (element instanceof Failure failure) {
+                close();
+                failure.exception().printStackTrace();
+                throw new UnableToSaveException("Nothing has been found. Try again later");
+            } else {
+                next = element;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        T row = (T) next;
+        next = null;
+        return row;
+    }
+
+    @Override
+    public void close() {
+        cancelled = true;
+        queues.forEach(BlockingQueue::clear);
+    }
+
+    private void read(IdRange range, BlockingQueue<Object> queue, RangeReader<T> reader) {
+        try {
+            readRange(range, queue, reader);
+        } finally {
+            if (runningReaders.decrementAndGet() == 0) {
+                onReadersDone.run();
+            }
+        }
+    }
+
+    private void readRange(IdRange range, BlockingQueue<Object> queue, RangeReader<T> reader) {
+        Object last = END;
+        try {
+            reader.read(range, row -> offer(queue, row));
+        } catch (CancellationException e) {
+            return;
+        } catch (Exception e) {
+            last = new Failure(e);
+        }
+        try {
+            offer(queue, last);
+        } catch (CancellationException | InterruptedException e) {
+            // nobody is waiting for this range any more
+        }
+    }
+
+    private void offer(BlockingQueue<Object> queue, Object element) throws InterruptedException {
+        while (!queue.offer(element, CANCEL_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (cancelled) throw new CancellationException();
+        }
+        if (cancelled) throw new CancellationException();
+    }
+
+    private Object take(BlockingQueue<Object> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new UnableToSaveException("Reading interrupted. Try again later");
+        }
+    }
+}
@@ -1,31 +1,59 @@
 package com.ag.peopledb.repository;
 
 import com.ag.peopledb.anotation.SQL;
+import com.ag.peopledb.counter.RowCounters;
+import com.ag.peopledb.exeption.UnableToSaveException;
+import com.ag.peopledb.index.CountingBloomFilter;
 import com.ag.peopledb.model.Address;
 import com.ag.peopledb.model.CrudOperation;
+import com.ag.peopledb.model.OperationClass;
 import com.ag.peopledb.model.Person;
 import com.ag.peopledb.model.Region;
 
 import java.math.BigDecimal;
 import java.sql.*;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.UnaryOperator;
 
 import static java.util.stream.Collectors.joining;
 
 public class PeopleRepository extends CRUDRepository<Person> {
 
+    private static final long MIN_EXPECTED_PEOPLE = 1024;
+    private static final ZoneId UTC = ZoneOffset.UTC;
+
     private AddressRepository addressRepository = null;
+    private CountingBloomFilter idFilter;
+    private CountingBloomFilter emailFilter;
+    private double existenceFalsePositiveRate;
 
     public static final String SAVE_PERSON_SQL = """
             INSERT INTO PEOPLE (FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, HOME_ADDRESS, BUSINESS_ADDRESS, PARENT_ID) 
             VALUES(?, ?, ?, ?, ?, ?, ?, ?) 
             """;
+    public static final String UPSERT_PERSON_SQL = """
+            MERGE INTO PEOPLE AS TARGET
+            USING (VALUES (CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS TIMESTAMP), CAST(? AS DECIMAL(15, 2)), CAST(? AS VARCHAR(255)), CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS BIGINT)))
+            AS SOURCE (FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, HOME_ADDRESS, BUSINESS_ADDRESS, PARENT_ID)
+            ON :key
+            WHEN MATCHED THEN UPDATE SET FIRST_NAME = SOURCE.FIRST_NAME, LAST_NAME = SOURCE.LAST_NAME, DOB = SOURCE.DOB, SALARY = SOURCE.SALARY, EMAIL = SOURCE.EMAIL,
+            HOME_ADDRESS = SOURCE.HOME_ADDRESS, BUSINESS_ADDRESS = SOURCE.BUSINESS_ADDRESS, PARENT_ID = SOURCE.PARENT_ID, VERSION = TARGET.VERSION + 1
+            WHEN NOT MATCHED THEN INSERT (FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, HOME_ADDRESS, BUSINESS_ADDRESS, PARENT_ID)
+            VALUES (SOURCE.FIRST_NAME, SOURCE.LAST_NAME, SOURCE.DOB, SOURCE.SALARY, SOURCE.EMAIL, SOURCE.HOME_ADDRESS, SOURCE.BUSINESS_ADDRESS, SOURCE.PARENT_ID)
+            """;
     public static final String FIND_BY_ID_SQL = """
             SELECT
-            PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL, 
-            CHILD.ID AS CHILD_ID, CHILD.FIRST_NAME AS CHILD_FIRST_NAME, CHILD.LAST_NAME AS CHILD_LAST_NAME, CHILD.DOB AS CHILD_DOB, CHILD.SALARY AS CHILD_SALARY, CHILD.EMAIL AS CHILD_EMAIL, 
+            PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL, PARENT.VERSION AS PARENT_VERSION, 
+            CHILD.ID AS CHILD_ID, CHILD.FIRST_NAME AS CHILD_FIRST_NAME, CHILD.LAST_NAME AS CHILD_LAST_NAME, CHILD.DOB AS CHILD_DOB, CHILD.SALARY AS CHILD_SALARY, CHILD.EMAIL AS CHILD_EMAIL, CHILD.VERSION AS CHILD_VERSION, 
             HOME.ID AS HOME_ID, HOME.STREET_ADDRESS AS HOME_STREET_ADDRESS, HOME.ADDRESS2 AS HOME_ADDRESS2, HOME.CITY AS HOME_CITY, HOME.STATE AS HOME_STATE, HOME.POSTCODE AS HOME_POSTCODE, HOME.COUNTY AS HOME_COUNTY, HOME.REGION AS HOME_REGION, HOME.COUNTRY AS HOME_COUNTRY,
             BUSINESS.ID AS BUSINESS_ID, BUSINESS.STREET_ADDRESS AS BUSINESS_STREET_ADDRESS, BUSINESS.ADDRESS2 AS BUSINESS_ADDRESS2, BUSINESS.CITY AS BUSINESS_CITY, BUSINESS.STATE AS BUSINESS_STATE, BUSINESS.POSTCODE AS BUSINESS_POSTCODE, BUSINESS.COUNTY AS BUSINESS_COUNTY, BUSINESS.REGION AS BUSINESS_REGION, BUSINESS.COUNTRY AS BUSINESS_COUNTRY, 
             FROM PEOPLE AS PARENT
@@ -34,31 +62,340 @@ public class PeopleRepository extends CRUDRepository<Person> {
             LEFT OUTER JOIN ADDRESSES AS BUSINESS ON PARENT.BUSINESS_ADDRESS = BUSINESS.ID
             WHERE PARENT.ID = ?
             """;
-    public static final String FIND_ALL_SQL = "SELECT ID, FIRST_NAME, LAST_NAME, DOB, SALARY FROM PEOPLE";
+    public static final String FIND_TREE_BY_ID_SQL = """
+            WITH RECURSIVE TREE (ID, DEPTH) AS (
+                SELECT ID, 0 FROM PEOPLE WHERE ID = ?
+                UNION ALL
+                SELECT CHILD.ID, TREE.DEPTH + 1 FROM PEOPLE AS CHILD
+                JOIN TREE ON CHILD.PARENT_ID = TREE.ID
+                WHERE TREE.DEPTH < ?
+            )
+            SELECT
+            PERSON.ID, PERSON.FIRST_NAME, PERSON.LAST_NAME, PERSON.DOB, PERSON.SALARY, PERSON.EMAIL, PERSON.VERSION, PERSON.PARENT_ID, TREE.DEPTH,
+            HOME.ID AS HOME_ID, HOME.STREET_ADDRESS AS HOME_STREET_ADDRESS, HOME.ADDRESS2 AS HOME_ADDRESS2, HOME.CITY AS HOME_CITY, HOME.STATE AS HOME_STATE, HOME.POSTCODE AS HOME_POSTCODE, HOME.COUNTY AS HOME_COUNTY, HOME.REGION AS HOME_REGION, HOME.COUNTRY AS HOME_COUNTRY,
+            BUSINESS.ID AS BUSINESS_ID, BUSINESS.STREET_ADDRESS AS BUSINESS_STREET_ADDRESS, BUSINESS.ADDRESS2 AS BUSINESS_ADDRESS2, BUSINESS.CITY AS BUSINESS_CITY, BUSINESS.STATE AS BUSINESS_STATE, BUSINESS.POSTCODE AS BUSINESS_POSTCODE, BUSINESS.COUNTY AS BUSINESS_COUNTY, BUSINESS.REGION AS BUSINESS_REGION, BUSINESS.COUNTRY AS BUSINESS_COUNTRY
+            FROM TREE
+            JOIN PEOPLE AS PERSON ON PERSON.ID = TREE.ID
+            LEFT OUTER JOIN ADDRESSES AS HOME ON PERSON.HOME_ADDRESS = HOME.ID
+            LEFT OUTER JOIN ADDRESSES AS BUSINESS ON PERSON.BUSINESS_ADDRESS = BUSINESS.ID
+            ORDER BY TREE.DEPTH, PERSON.ID
+            """;
+    public static final String FIND_ALL_SQL = "SELECT ID, FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, VERSION FROM PEOPLE";
+    public static final String FIND_ALL_BY_ID_SQL = "SELECT ID, FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, VERSION FROM PEOPLE WHERE ID IN (:ids)";
+    public static final String SEARCH_INDEX_IN_RANGE_SQL = "SELECT ID, FIRST_NAME, LAST_NAME, EMAIL FROM PEOPLE WHERE ID BETWEEN ? AND ? ORDER BY ID";
+    public static final String PROJECT_BY_ID_SQL = "SELECT :columns FROM PEOPLE WHERE ID = ?";
+    public static final String PROJECT_ALL_SQL = "SELECT :columns FROM PEOPLE";
+    public static final String FIND_ID_RANGE_SQL = "SELECT MIN(ID), MAX(ID) FROM PEOPLE";
+    public static final String FIND_ALL_IN_RANGE_SQL = "SELECT ID, FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, VERSION FROM PEOPLE WHERE ID BETWEEN ? AND ? ORDER BY ID";
+    public static final String EXPORT_IN_RANGE_SQL = """
+            SELECT
+            PERSON.ID, PERSON.FIRST_NAME, PERSON.LAST_NAME, PERSON.EMAIL, PERSON.DOB, PERSON.SALARY,
+            HOME.ID AS HOME_ID, HOME.STREET_ADDRESS, HOME.ADDRESS2, HOME.CITY, HOME.STATE, HOME.POSTCODE, HOME.COUNTY, HOME.REGION, HOME.COUNTRY
+            FROM PEOPLE AS PERSON
+            LEFT OUTER JOIN ADDRESSES AS HOME ON PERSON.HOME_ADDRESS = HOME.ID
+            WHERE PERSON.ID BETWEEN ? AND ?
+            ORDER BY PERSON.ID
+            """;
+    public static final String SNAPSHOT_SQL = """
+            SELECT PERSON.ID, PERSON.FIRST_NAME, PERSON.LAST_NAME, PERSON.EMAIL, PERSON.DOB, PERSON.SALARY, HOME.REGION
+            FROM PEOPLE AS PERSON
+            LEFT OUTER JOIN ADDRESSES AS HOME ON PERSON.HOME_ADDRESS = HOME.ID
+            ORDER BY PERSON.ID
+            """;
+    public static final String EXISTENCE_FILTER_SQL = "SELECT ID, EMAIL FROM PEOPLE";
+    public static final String EXISTS_BY_ID_SQL = "SELECT 1 FROM PEOPLE WHERE ID = ?";
+    public static final String EXISTS_BY_EMAIL_SQL = "SELECT 1 FROM PEOPLE WHERE EMAIL = ? LIMIT 1";
     public static final String SELECT_COUNT_SQL = "SELECT COUNT(*) FROM PEOPLE";
-    public static final String DELETE_BY_ID_SQL = "DELETE FROM PEOPLE WHERE ID=?";
+    public static final String COUNT_BY_REGION_SQL = "SELECT COUNT(*) FROM PEOPLE JOIN ADDRESSES AS HOME ON HOME.ID = PEOPLE.HOME_ADDRESS WHERE UPPER(HOME.REGION) = ?";
+    public static final String COUNT_BY_PARENT_ID_SQL = "SELECT COUNT(*) FROM PEOPLE WHERE PARENT_ID = ?";
+    public static final String DELETE_BY_ID_SQL = "DELETE FROM PEOPLE WHERE ID=? AND VERSION=?";
     public static final String DELETE_BY_ID_IN_SQL = "DELETE FROM PEOPLE WHERE ID IN (:ids)";
-    public static final String UPDATE_SQL = "UPDATE PEOPLE SET FIRST_NAME=?, LAST_NAME=?, DOB=?, SALARY=? WHERE ID=?";
+    public static final String FIND_PARENT_IDS_SQL = "SELECT ID, PARENT_ID FROM PEOPLE WHERE ID IN (:ids)";
+    public static final String FIND_STORED_EMAILS_SQL = "SELECT ID, EMAIL FROM PEOPLE WHERE ID IN (:ids) AND EMAIL IS NOT NULL";
+    public static final String UPDATE_SQL = "UPDATE PEOPLE SET FIRST_NAME=?, LAST_NAME=?, DOB=?, SALARY=?, EMAIL=?, VERSION=VERSION+1 WHERE ID=? AND VERSION=?";
+
+    static final List<String> CHILD_UPSERT_KEY = List.of("PARENT_ID", "FIRST_NAME", "LAST_NAME", "DOB");
 
     public PeopleRepository(Connection connection) {
 
         super(connection);
         addressRepository = new AddressRepository(connection);
+        setUpsertKey("EMAIL");
+    }
+
+    @Override
+    public void setAdmissionControl(AdmissionControl admissionControl) {
+        super.setAdmissionControl(admissionControl);
+        addressRepository.setAdmissionControl(admissionControl);
+    }
+
+    AddressRepository getAddressRepository() {
+        return addressRepository;
+    }
+
+    /**
+     * Builds probabilistic filters over PEOPLE.ID and PEOPLE.EMAIL from one scan, sized for twice the current number
+     * of people at the given false positive rate. From then on {@link #existsById(long)} and
+     * {@link #existsByEmail(String)} only query the database when the filter says the value may be present.
+     * The filters follow this repository's saves, updates and deletes. Deletes are only removed from the filters
+     * in auto-commit mode, since otherwise they could still be rolled back, and only if the filter may contain
+     * the value, since removing a value that was never added can hide others. For the same reason a deleted person's
+     * email is read from the database before the delete rather than taken from the entity. Writes made through
+     * other connections are not seen until the filters are rebuilt, i.e. they are meant for imports
+     * that own the table while they run.
+     */
+    public void enableExistenceFilters(double falsePositiveRate) {
+        boolean alreadyEnabled = idFilter != null;
+        existenceFalsePositiveRate = falsePositiveRate;
+        rebuildExistenceFilters();
+        if (!alreadyEnabled) {
+            addListener(new EntityListener<>() {
+                @Override
+                public void onSave(Person person) {
+                    idFilter.add(person.getId());
+                    if (person.getEmail() != null) emailFilter.add(person.getEmail());
+                }
+
+                private Map<Long, String> storedEmails = Map.of();
+
+                @Override
+                public void onUpdate(Person person) {
+                    if (person.getEmail() != null) emailFilter.add(person.getEmail());
+                }
+
+                @Override
+                public void beforeDelete(Collection<Person> people) {
+                    storedEmails = isAutoCommit()
+                            ? findStoredEmails(people.stream().map(Person::getId).filter(Objects::nonNull).toList())
+                            : Map.of();
+                }
+
+                @Override
+                public void onDelete(Person person) {
+                    if (!isAutoCommit()) return;
+                    if (idFilter.mightContain(person.getId())) idFilter.remove(person.getId());
+                    String email = storedEmails.get(person.getId());
+                    if (email != null && emailFilter.mightContain(email)) emailFilter.remove(email);
+                }
+            });
+        }
+    }
+
+    public void rebuildExistenceFilters() {
+        long expectedPeople = Math.max(MIN_EXPECTED_PEOPLE, count() * 2);
+        CountingBloomFilter ids = CountingBloomFilter.create(expectedPeople, existenceFalsePositiveRate);
+        CountingBloomFilter emails = CountingBloomFilter.create(expectedPeople, existenceFalsePositiveRate);
+        try (AdmissionControl.Permit permit = admit(OperationClass.SCAN);
+             PreparedStatement preparedStatement = connection.prepareStatement(EXISTENCE_FILTER_SQL,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            preparedStatement.setFetchSize(1000);
+            ResultSet resultSet = permit.execute(preparedStatement, PreparedStatement::executeQuery);
+            while (resultSet.next()) {
+                ids.add(resultSet.getLong("ID"));
+                String email = resultSet.getString("EMAIL");
+                if (email != null) emails.add(email);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Building existence filters failed. Try again later");
+        }
+        idFilter = ids;
+        emailFilter = emails;
+    }
+
+    public boolean existsById(long id) {
+        if (idFilter != null) {
+            if (idFilter.isOverCapacity()) rebuildExistenceFilters();
+            if (!idFilter.mightContain(id)) return false;
+        }
+        return exists(EXISTS_BY_ID_SQL, preparedStatement -> preparedStatement.setLong(1, id));
+    }
+
+    public boolean existsByEmail(String email) {
+        if (emailFilter != null) {
+            if (emailFilter.isOverCapacity()) rebuildExistenceFilters();
+            if (!emailFilter.mightContain(email)) return false;
+        }
+        return exists(EXISTS_BY_EMAIL_SQL, preparedStatement -> preparedStatement.setString(1, email));
+    }
+
+    /**
+     * Loads the person with the given ID together with all descendants down to maxDepth generations
+     * (0 loads only the person) in one recursive query, with their home and business addresses.
+     * Rows come ordered by depth, so every parent is already built when its children arrive and the tree
+     * is assembled in a single pass over the rows.
+     */
+    public Optional<Person> findTreeById(long id, int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth must not be negative: " + maxDepth);
+        }
+        Map<Long, Person> peopleById = new HashMap<>();
+        Person root = null;
+        try (AdmissionControl.Permit permit = admit(OperationClass.SCAN);
+             PreparedStatement preparedStatement = connection.prepareStatement(FIND_TREE_BY_ID_SQL)) {
+            preparedStatement.setFetchSize(1000);
+            preparedStatement.setLong(1, id);
+            preparedStatement.setInt(2, maxDepth);
+            ResultSet resultSet = permit.execute(preparedStatement, PreparedStatement::executeQuery);
+            while (resultSet.next()) {
+                Person person = extractPerson(resultSet, "");
+                person.setHomeAddress(extractAddress(resultSet, "HOME_"));
+                person.setBusinessAddress(extractAddress(resultSet, "BUSINESS_"));
+                peopleById.put(person.getId(), person);
+                if (root == null) {
+                    root = person;
+                } else {
+                    peopleById.get(resultSet.getLong("PARENT_ID")).addChild(person);
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Nothing has been found. Try again later");
+        }
+        return Optional.ofNullable(root);
+    }
+
+    /**
+     * Sums the maintained counter if {@link RowCounters} are installed, otherwise counts the table.
+     * Whether they are installed is checked on every call, so installing or dropping the triggers takes effect at once.
+     */
+    @Override
+    public long count() {
+        if (!rowCountersInstalled()) return super.count();
+        return countRows(OperationClass.POINT_READ, RowCounters.READ_SQL, counterKey(RowCounters.PEOPLE, RowCounters.TOTAL_KEY));
+    }
+
+    /**
+     * Number of people whose home address is in the given region.
+     */
+    public long countByRegion(Region region) {
+        if (!rowCountersInstalled()) {
+            return countRows(OperationClass.SCAN, COUNT_BY_REGION_SQL, preparedStatement -> preparedStatement.setString(1, region.name()));
+        }
+        return countRows(OperationClass.POINT_READ, RowCounters.READ_SQL, counterKey(RowCounters.REGION, region.name()));
+    }
+
+    /**
+     * Number of children of the person with the given ID.
+     */
+    public long countByParentId(long parentId) {
+        if (!rowCountersInstalled()) {
+            return countRows(OperationClass.SCAN, COUNT_BY_PARENT_ID_SQL, preparedStatement -> preparedStatement.setLong(1, parentId));
+        }
+        return countRows(OperationClass.POINT_READ, RowCounters.READ_SQL, counterKey(RowCounters.PARENT, Long.toString(parentId)));
+    }
+
+    private boolean rowCountersInstalled() {
+        return RowCounters.isInstalled(connection);
+    }
+
+    private static ParameterBinder counterKey(String counterName, String counterKey) {
+        return preparedStatement -> {
+            preparedStatement.setString(1, counterName);
+            preparedStatement.setString(2, counterKey);
+        };
+    }
+
+    private long countRows(OperationClass operationClass, String sql, ParameterBinder parameterBinder) {
+        try (AdmissionControl.Permit permit = admit(operationClass);
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            parameterBinder.bind(preparedStatement);
+            ResultSet resultSet = permit.execute(preparedStatement, PreparedStatement::executeQuery);
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Nothing to count. Try again later");
+        }
+    }
+
+    /**
+     * PARENT_ID of each of the given people as stored, null for people without a parent. IDs that do not exist are skipped.
+     */
+    Map<Long, Long> findParentIds(Collection<Long> ids) {
+        Map<Long, Long> parentIds = new HashMap<>();
+        if (ids.isEmpty()) return parentIds;
+        String sql = FIND_PARENT_IDS_SQL.replace(":ids", ids.stream().map(String::valueOf).collect(joining(",")));
+        try (AdmissionControl.Permit permit = admit(OperationClass.POINT_READ);
+             Statement statement = connection.createStatement()) {
+            ResultSet resultSet = permit.execute(statement, s -> s.executeQuery(sql));
+            while (resultSet.next()) {
+                long parentId = resultSet.getLong("PARENT_ID");
+                parentIds.put(resultSet.getLong("ID"), resultSet.wasNull() ? null : parentId);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Nothing has been found. Try again later");
+        }
+        return parentIds;
+    }
+
+    /**
+     * EMAIL of each of the given people as stored. People without an email and IDs that do not exist are skipped.
+     */
+    private Map<Long, String> findStoredEmails(Collection<Long> ids) {
+        Map<Long, String> emails = new HashMap<>();
+        if (ids.isEmpty()) return emails;
+        String sql = FIND_STORED_EMAILS_SQL.replace(":ids", ids.stream().map(String::valueOf).collect(joining(",")));
+        try (AdmissionControl.Permit permit = admit(OperationClass.POINT_READ);
+             Statement statement = connection.createStatement()) {
+            ResultSet resultSet = permit.execute(statement, s -> s.executeQuery(sql));
+            while (resultSet.next()) {
+                emails.put(resultSet.getLong("ID"), resultSet.getString("EMAIL"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Nothing has been found. Try again later");
+        }
+        return emails;
+    }
+
+    private interface ParameterBinder {
+        void bind(PreparedStatement preparedStatement) throws SQLException;
+    }
+
+    private boolean exists(String sql, ParameterBinder parameterBinder) {
+        try (AdmissionControl.Permit permit = admit(OperationClass.POINT_READ);
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            parameterBinder.bind(preparedStatement);
+            return permit.execute(preparedStatement, PreparedStatement::executeQuery).next();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Nothing has been found. Try again later");
+        }
+    }
+
+    private boolean isAutoCommit() {
+        try {
+            return connection.getAutoCommit();
+        } catch (SQLException e) {
+            return false;
+        }
     }
 
     @Override
     @SQL(value = SAVE_PERSON_SQL, operationType = CrudOperation.SAVE)
     void mapForSave(Person entity, PreparedStatement preparedStatement) throws SQLException {
-        Address savedAddress = null;
+        mapPerson(entity, preparedStatement, addressRepository::save);
+    }
+
+    /**
+     * Same parameters as a save, but new addresses are upserted as well, so re-importing a person does not duplicate them.
+     */
+    @Override
+    @SQL(value = UPSERT_PERSON_SQL, operationType = CrudOperation.UPSERT)
+    void mapForUpsert(Person entity, PreparedStatement preparedStatement) throws SQLException {
+        mapPerson(entity, preparedStatement, addressRepository::upsert);
+    }
 
+    private void mapPerson(Person entity, PreparedStatement preparedStatement, UnaryOperator<Address> addressWriter) throws SQLException {
         preparedStatement.setString(1, entity.getFirstName());
         preparedStatement.setString(2, entity.getLastName());
         preparedStatement.setTimestamp(3, convertDateOfBirthToTimestamp(entity.getDob()));
         preparedStatement.setBigDecimal(4, entity.getSalary());
         preparedStatement.setString(5, entity.getEmail());
 
-        associateAddressWithPerson(preparedStatement, entity.getHomeAddress(), 6);
-        associateAddressWithPerson(preparedStatement, entity.getBusinessAddress(), 7);
+        associateAddressWithPerson(preparedStatement, entity.getHomeAddress(), 6, addressWriter);
+        associateAddressWithPerson(preparedStatement, entity.getBusinessAddress(), 7, addressWriter);
 
         associateChildWithPerson(entity, preparedStatement);
 
@@ -79,10 +416,34 @@ public class PeopleRepository extends CRUDRepository<Person> {
                 .forEach(this::save);
     }
 
-    private void associateAddressWithPerson(PreparedStatement preparedStatement, Optional<Address> address, int parameterIndex) throws SQLException {
+    /**
+     * Also remembers the IDs of the addresses and the state of the children, which a save of the person generates as well.
+     */
+    @Override
+    Runnable rememberGeneratedState(Person entity) {
+        List<Runnable> restorers = new ArrayList<>();
+        restorers.add(super.rememberGeneratedState(entity));
+        entity.getHomeAddress().ifPresent(address -> restorers.add(addressRepository.rememberGeneratedState(address)));
+        entity.getBusinessAddress().ifPresent(address -> restorers.add(addressRepository.rememberGeneratedState(address)));
+        entity.getChildren().forEach(child -> restorers.add(rememberGeneratedState(child)));
+        return () -> restorers.forEach(Runnable::run);
+    }
+
+    /**
+     * Children usually have no email, so they are matched within their family on {@link #CHILD_UPSERT_KEY} instead.
+     */
+    @Override
+    protected void postUpsert(Person entity, long id) {
+        if (!entity.getChildren().isEmpty()) {
+            upsertAll(entity.getChildren(), CHILD_UPSERT_KEY);
+        }
+    }
+
+    private void associateAddressWithPerson(PreparedStatement preparedStatement, Optional<Address> address, int parameterIndex,
+                                            UnaryOperator<Address> addressWriter) throws SQLException {
         Address savedAddress;
         if (address.isPresent()) {
-            savedAddress = addressRepository.save(address.get());
+            savedAddress = address.get().id() == null ? addressWriter.apply(address.get()) : address.get();
             preparedStatement.setLong(parameterIndex, savedAddress.id());
         } else {
             preparedStatement.setObject(parameterIndex, null);
@@ -108,27 +469,39 @@ public class PeopleRepository extends CRUDRepository<Person> {
 
             }
 
-            Person child = extractPerson(resultSet, "CHILD_");
-
             Address homeAddress = extractAddress(resultSet, "HOME_");
             Address businessAddress = extractAddress(resultSet, "BUSINESS_");
 
             finalParent.setHomeAddress(homeAddress);
             finalParent.setBusinessAddress(businessAddress);
-            finalParent.addChild(child);
+            if (getValueByAlias("CHILD_ID", resultSet, Long.class) != null) {
+                finalParent.addChild(extractPerson(resultSet, "CHILD_"));
+            }
 
         } while (resultSet.next());
 
         return finalParent;
     }
 
+    @Override
+    @SQL(value = FIND_ALL_BY_ID_SQL, operationType = CrudOperation.FIND_ALL_BY_ID)
+    @SQL(value = PROJECT_BY_ID_SQL, operationType = CrudOperation.PROJECT_BY_ID)
+    @SQL(value = PROJECT_ALL_SQL, operationType = CrudOperation.PROJECT_ALL)
+    @SQL(value = FIND_ID_RANGE_SQL, operationType = CrudOperation.FIND_ID_RANGE)
+    @SQL(value = FIND_ALL_IN_RANGE_SQL, operationType = CrudOperation.FIND_ALL_IN_RANGE)
+    Person extractEntityFromScan(ResultSet resultSet) throws SQLException {
+        return extractPerson(resultSet, "");
+    }
+
     private static Person extractPerson(ResultSet resultSet, String aliasPrefix) throws SQLException {
         long personId = getValueByAlias(aliasPrefix + "ID", resultSet, Long.class);
         String personFirstName = getValueByAlias(aliasPrefix + "FIRST_NAME", resultSet, String.class);
         String personLastName = getValueByAlias(aliasPrefix + "LAST_NAME", resultSet, String.class);
-        ZonedDateTime personDateOfBirth = ZonedDateTime.of(getValueByAlias(aliasPrefix + "DOB", resultSet, Timestamp.class).toLocalDateTime(), ZoneId.of("+0"));
+        ZonedDateTime personDateOfBirth = ZonedDateTime.of(getValueByAlias(aliasPrefix + "DOB", resultSet, Timestamp.class).toLocalDateTime(), UTC);
         BigDecimal personSalary = getValueByAlias(aliasPrefix + "SALARY", resultSet, BigDecimal.class);
         Person person = new Person(personId, personFirstName, personLastName, personDateOfBirth, personSalary);
+        person.setEmail(getValueByAlias(aliasPrefix + "EMAIL", resultSet, String.class));
+        person.setVersion(getValueByAlias(aliasPrefix + "VERSION", resultSet, Long.class));
         return person;
     }
 
@@ -168,10 +541,11 @@ public class PeopleRepository extends CRUDRepository<Person> {
         preparedStatement.setString(2, entity.getLastName());
         preparedStatement.setTimestamp(3, convertDateOfBirthToTimestamp(entity.getDob()));
         preparedStatement.setBigDecimal(4, entity.getSalary());
+        preparedStatement.setString(5, entity.getEmail());
     }
 
     private static Timestamp convertDateOfBirthToTimestamp(ZonedDateTime dateOfBirth) {
-        return Timestamp.valueOf(dateOfBirth.withZoneSameInstant(ZoneId.of("+0")).toLocalDateTime());
+        return Timestamp.valueOf(dateOfBirth.withZoneSameInstant(UTC).toLocalDateTime());
     }
 }
 
@@ -0,0 +1,116 @@
+package com.ag.peopledb.repository;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Maps rows straight into a record, one column per record component, in declaration order.
+ * Unless given explicitly, the column of a component is its name in upper snake case, e.g. firstName - FIRST_NAME.
+ * Mappers are cached per record class and column list.
+ */
+final class RecordMapper<R extends Record> {
+
+    private static final Pattern COLUMN_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    private static final Map<List<Object>, RecordMapper<?>> CACHE = new ConcurrentHashMap<>();
+
+    private final List<String> columns;
+    private final Class<?>[] types;
+    private final Constructor<R> constructor;
+
+    private RecordMapper(Class<R> recordClass, String[] columns) {
+        RecordComponent[] components = recordClass.getRecordComponents();
+        if (columns.length == 0) {
+            columns = Arrays.stream(components).map(RecordComponent::getName).map(RecordMapper::toColumnName).toArray(String[]::new);
+        }
+        if (columns.length != components.length) {
+            throw new IllegalArgumentException(String.format("%s has %d components but %d columns were given",
+                    recordClass.getSimpleName(), components.length, columns.length));
+        }
+        for (String column : columns) {
+            if (!COLUMN_NAME.matcher(column).matches()) {
+                throw new IllegalArgumentException("Invalid column name: " + column);
+            }
+        }
+        this.columns = List.of(columns);
+        this.types = Arrays.stream(components).map(RecordComponent::getType).toArray(Class<?>[]::new);
+        try {
+            this.constructor = recordClass.getDeclaredConstructor(types);
+            this.constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("No canonical constructor found in " + recordClass, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <R extends Record> RecordMapper<R> of(Class<R> recordClass, String... columns) {
+        return (RecordMapper<R>) CACHE.computeIfAbsent(List.of(recordClass, List.of(columns)),
+                key -> new RecordMapper<>(recordClass, columns));
+    }
+
+    /**
+     * Comma separated column list for the SELECT clause.
+     */
+    String selectList() {
+        return String.join(", ", columns);
+    }
+
+    R map(ResultSet resultSet) throws SQLException {
+        Object[] values = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            values[i] = read(resultSet, i + 1, types[i]);
+        }
+        try {
+            return constructor.newInstance(values);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new RuntimeException("Unable to create projection " + constructor.getDeclaringClass().getSimpleName(), e);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object read(ResultSet resultSet, int column, Class<?> type) throws SQLException {
+        if (type == long.class) return resultSet.getLong(column);
+        if (type == int.class) return resultSet.getInt(column);
+        if (type == double.class) return resultSet.getDouble(column);
+        if (type == boolean.class) return resultSet.getBoolean(column);
+        if (type == String.class) return resultSet.getString(column);
+        if (type == BigDecimal.class) return resultSet.getBigDecimal(column);
+        if (type == Long.class || type == Integer.class || type == Double.class || type == Boolean.class) {
+            return resultSet.getObject(column, type);
+        }
+        if (type == LocalDate.class || type == LocalDateTime.class) {
+            return resultSet.getObject(column, type);
+        }
+        if (type == Instant.class) {
+            Timestamp timestamp = resultSet.getTimestamp(column);
+            return timestamp == null ? null : timestamp.toLocalDateTime().toInstant(ZoneOffset.UTC);
+        }
+        if (type.isEnum()) {
+            String value = resultSet.getString(column);
+            return value == null ? null : Enum.valueOf((Class<Enum>) type, value.toUpperCase(Locale.ROOT));
+        }
+        return resultSet.getObject(column, type);
+    }
+
+    private static String toColumnName(String componentName) {
+        return componentName.chars()
+                .mapToObj(c -> Character.isUpperCase(c) ? "_" + (char) c : String.valueOf((char) Character.toUpperCase(c)))
+                .collect(joining());
+    }
+}
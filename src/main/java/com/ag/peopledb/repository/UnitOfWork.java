@@ -0,0 +1,216 @@
+package com.ag.peopledb.repository;
+
+import com.ag.peopledb.exeption.UnableToSaveException;
+import com.ag.peopledb.model.Address;
+import com.ag.peopledb.model.Person;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Collects new, changed and removed people and addresses and writes them all at {@link #commit()},
+ * grouped by table so that each group is a single JDBC batch:
+ * new addresses, then new people level by level (parents before their children),
+ * then updates, then deletes of people (children before their parents, as stored in PEOPLE) and finally deletes of addresses.
+ * <p>
+ * Everything is written in one transaction; a connection in auto-commit mode is switched out of it for the commit.
+ * Registrations are tracked by identity, because the hash code of a person changes once it gets an ID.
+ */
+public class UnitOfWork {
+
+    private final PeopleRepository peopleRepository;
+    private final AddressRepository addressRepository;
+
+    private final Registrations<Address> newAddresses = new Registrations<>();
+    private final Registrations<Person> newPeople = new Registrations<>();
+    private final Registrations<Address> dirtyAddresses = new Registrations<>();
+    private final Registrations<Person> dirtyPeople = new Registrations<>();
+    private final Registrations<Address> removedAddresses = new Registrations<>();
+    private final Registrations<Person> removedPeople = new Registrations<>();
+
+    public UnitOfWork(PeopleRepository peopleRepository) {
+        this.peopleRepository = peopleRepository;
+        this.addressRepository = peopleRepository.getAddressRepository();
+    }
+
+    /**
+     * Registers the person together with its unsaved addresses and unsaved children.
+     */
+    public void registerNew(Person person) {
+        if (person.getId() != null) {
+            throw new IllegalArgumentException("Person is already saved: " + person);
+        }
+        if (!newPeople.add(person)) return;
+        person.getHomeAddress().filter(address -> address.id() == null).ifPresent(this::registerNew);
+        person.getBusinessAddress().filter(address -> address.id() == null).ifPresent(this::registerNew);
+        person.getChildren().stream()
+                .filter(child -> child.getId() == null)
+                .forEach(this::registerNew);
+    }
+
+    public void registerNew(Address address) {
+        if (address.id() != null) {
+            throw new IllegalArgumentException("Address is already saved: " + address);
+        }
+        newAddresses.add(address);
+    }
+
+    /**
+     * Changes to a person registered as new are saved anyway, so registering it as dirty as well does nothing.
+     */
+    public void registerDirty(Person person) {
+        if (person.getId() == null) return;
+        dirtyPeople.add(person);
+    }
+
+    public void registerDirty(Address address) {
+        if (address.id() == null) return;
+        dirtyAddresses.add(address);
+    }
+
+    /**
+     * Removing a person that is still registered as new only cancels the registration.
+     */
+    public void registerRemoved(Person person) {
+        if (newPeople.remove(person)) return;
+        dirtyPeople.remove(person);
+        removedPeople.add(person);
+    }
+
+    public void registerRemoved(Address address) {
+        if (newAddresses.remove(address)) return;
+        dirtyAddresses.remove(address);
+        removedAddresses.add(address);
+    }
+
+    /**
+     * Writes all registered changes and commits the transaction.
+     * On failure the transaction is rolled back, the registered entities get back the IDs and versions they had before
+     * and the registrations are kept.
+     */
+    public void commit() {
+        List<Runnable> restorers = rememberGeneratedState();
+        try {
+            boolean autoCommit = peopleRepository.connection.getAutoCommit();
+            peopleRepository.connection.setAutoCommit(false);
+            try {
+                write();
+                peopleRepository.connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                rollback(restorers);
+                throw e;
+            } finally {
+                peopleRepository.connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Committing unit of work failed. Try again later");
+        }
+        clear();
+    }
+
+    public void clear() {
+        newAddresses.clear();
+        newPeople.clear();
+        dirtyAddresses.clear();
+        dirtyPeople.clear();
+        removedAddresses.clear();
+        removedPeople.clear();
+    }
+
+    private void write() {
+        addressRepository.saveAll(newAddresses.entities, false);
+        for (List<Person> level : byDepth(newPeople.entities, UnitOfWork::depth, Comparator.naturalOrder())) {
+            peopleRepository.saveAll(level, false);
+        }
+        addressRepository.updateAll(dirtyAddresses.entities);
+        peopleRepository.updateAll(dirtyPeople.entities);
+        for (List<Person> level : byDepth(removedPeople.entities, storedDepth(removedPeople.entities), Comparator.reverseOrder())) {
+            peopleRepository.deleteAll(level);
+        }
+        addressRepository.deleteAll(removedAddresses.entities);
+    }
+
+    private List<Runnable> rememberGeneratedState() {
+        List<Runnable> restorers = new ArrayList<>();
+        newAddresses.entities.forEach(address -> restorers.add(addressRepository.rememberGeneratedState(address)));
+        dirtyAddresses.entities.forEach(address -> restorers.add(addressRepository.rememberGeneratedState(address)));
+        newPeople.entities.forEach(person -> restorers.add(peopleRepository.rememberGeneratedState(person)));
+        dirtyPeople.entities.forEach(person -> restorers.add(peopleRepository.rememberGeneratedState(person)));
+        return restorers;
+    }
+
+    private void rollback(List<Runnable> restorers) {
+        try {
+            peopleRepository.connection.rollback();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        restorers.forEach(Runnable::run);
+    }
+
+    /**
+     * Groups people by their depth, in the given order of depths. Each level becomes one batch.
+     */
+    private static Collection<List<Person>> byDepth(List<Person> people, ToIntFunction<Person> depth, Comparator<Integer> order) {
+        Map<Integer, List<Person>> levels = new TreeMap<>(order);
+        people.stream().collect(groupingBy(depth::applyAsInt, () -> levels, toList()));
+        return levels.values();
+    }
+
+    /**
+     * Number of ancestors a new person has in memory.
+     */
+    private static int depth(Person person) {
+        int depth = 0;
+        for (Optional<Person> parent = person.getParent(); parent.isPresent(); parent = parent.get().getParent()) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * Number of ancestors a removed person has among the other removed people, going by the PARENT_IDs stored in PEOPLE,
+     * because people that were read back have no parent set in memory.
+     */
+    private ToIntFunction<Person> storedDepth(List<Person> people) {
+        if (people.isEmpty()) return person -> 0;
+        Map<Long, Long> parentIds = peopleRepository.findParentIds(people.stream().map(Person::getId).toList());
+        return person -> {
+            int depth = 0;
+            for (Long parentId = parentIds.get(person.getId()); parentIds.containsKey(parentId); parentId = parentIds.get(parentId)) {
+                depth++;
+            }
+            return depth;
+        };
+    }
+
+    /**
+     * Entities in registration order, with identity-based lookups.
+     */
+    private static final class Registrations<E> {
+        private final List<E> entities = new ArrayList<>();
+        private final Set<E> identities = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        boolean add(E entity) {
+            if (!identities.add(entity)) return false;
+            entities.add(entity);
+            return true;
+        }
+
+        boolean remove(E entity) {
+            if (!identities.remove(entity)) return false;
+            entities.removeIf(registered -> registered == entity);
+            return true;
+        }
+
+        void clear() {
+            entities.clear();
+            identities.clear();
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package com.ag.peopledb.repository;
+
+import com.ag.peopledb.exeption.UnableToSaveException;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded in-memory queue of pending saves and updates that a background thread writes in batches
+ * through {@link CRUDRepository#saveAll(Collection)} and {@link CRUDRepository#updateAll(Collection)}.
+ * A batch is written when batchSize entities are waiting or flushInterval has passed, whichever comes first.
+ * Repeated updates of the same ID are collapsed into one, the last one wins.
+ * <p>
+ * The buffer owns the transaction of the repository's connection: if auto-commit is off, every batch is committed.
+ * Give it a repository with its own connection. Writes that have not been flushed yet are lost if the process dies.
+ * If a batch fails, its entities are dropped and the failure is thrown by the next {@link #flush()}. With auto-commit off
+ * the batch is rolled back as a whole and its entities, together with their addresses and children, get back the IDs
+ * and versions they had before, so they can be written again.
+ * <p>
+ * An update of an entity whose save is being written waits until that batch is done, so it sees the generated ID.
+ */
+public class WriteBehindBuffer<T> implements AutoCloseable {
+
+    public enum BackpressurePolicy {
+        /**
+         * Wait until the flusher has made room in the queue.
+         */
+        BLOCK,
+        /**
+         * Throw {@link RejectedExecutionException}.
+         */
+        REJECT,
+        /**
+         * Write the entity synchronously on the calling thread.
+         */
+        CALLER_RUNS
+    }
+
+    public record Metrics(int queueDepth, long flushes, long flushedEntities, long coalescedUpdates, long rejected,
+                          long failedFlushes, Duration lastFlushLatency, Duration maxFlushLatency) {
+    }
+
+    private final CRUDRepository<T> repository;
+    private final int capacity;
+    private final int batchSize;
+    private final BackpressurePolicy backpressurePolicy;
+    private final ScheduledExecutorService flusher;
+
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final Condition notFull = queueLock.newCondition();
+    private final Condition batchDone = queueLock.newCondition();
+    private List<T> pendingSaves = new ArrayList<>();
+    private List<T> writingSaves = List.of();
+    private Map<Long, T> pendingUpdates = new LinkedHashMap<>();
+    private boolean flushScheduled;
+    private boolean closed;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private RuntimeException lastFailure;
+
+    private long flushes;
+    private long flushedEntities;
+    private long coalescedUpdates;
+    private long rejected;
+    private long failedFlushes;
+    private long lastFlushNanos;
+    private long maxFlushNanos;
+
+    WriteBehindBuffer(CRUDRepository<T> repository, int capacity, int batchSize, Duration flushInterval,
+                      BackpressurePolicy backpressurePolicy) {
+        if (capacity < 1 || batchSize < 1 || batchSize > capacity) {
+            throw new IllegalArgumentException(String.format("Invalid capacity %d / batch size %d", capacity, batchSize));
+        }
+        this.repository = repository;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.backpressurePolicy = backpressurePolicy;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalNanos = flushInterval.toNanos();
+        flusher.scheduleWithFixedDelay(this::backgroundFlush, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void save(T entity) {
+        enqueue(entity, true);
+    }
+
+    public void update(T entity) {
+        enqueue(entity, false);
+    }
+
+    /**
+     * Barrier: returns once everything accepted before the call has been written and committed.
+     */
+    public void flush() {
+        writePending();
+        RuntimeException failure;
+        queueLock.lock();
+        try {
+            failure = lastFailure;
+            lastFailure = null;
+        } finally {
+            queueLock.unlock();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public Metrics metrics() {
+        queueLock.lock();
+        try {
+            return new Metrics(depth(), flushes, flushedEntities, coalescedUpdates, rejected, failedFlushes,
+                    Duration.ofNanos(lastFlushNanos), Duration.ofNanos(maxFlushNanos));
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting writes, flushes what is pending and stops the flusher thread.
+     */
+    @Override
+    public void close() {
+        queueLock.lock();
+        try {
+            closed = true;
+            notFull.signalAll();
+        } finally {
+            queueLock.unlock();
+        }
+        try {
+            flush();
+        } finally {
+            flusher.shutdownNow();
+        }
+    }
+
+    private void enqueue(T entity, boolean isNew) {
+        queueLock.lock();
+        try {
+            ensureOpen();
+            Long id = null;
+            if (!isNew) {
+                while (containsSame(writingSaves, entity)) {
+                    batchDone.awaitUninterruptibly();
+                }
+                id = repository.getIdByAnnotation(entity);
+            }
+            if (!isNew && pendingUpdates.containsKey(id)) {
+                pendingUpdates.put(id, entity);
+                coalescedUpdates++;
+                return;
+            }
+            if (!isNew && id == null) {
+                if (containsSame(pendingSaves, entity)) {
+                    coalescedUpdates++;
+                    return;
+                }
+                throw new IllegalArgumentException("Cannot update an entity that has not been saved: " + entity);
+            }
+            while (depth() >= capacity) {
+                switch (backpressurePolicy) {
+                    case REJECT -> {
+                        rejected++;
+                        throw new RejectedExecutionException("Write-behind queue is full: " + capacity);
+                    }
+                    case CALLER_RUNS -> {
+                        queueLock.unlock();
+                        try {
+                            writeNow(entity, isNew);
+                        } finally {
+                            queueLock.lock();
+                        }
+                        return;
+                    }
+                    case BLOCK -> {
+                        scheduleFlush();
+                        notFull.awaitUninterruptibly();
+                        ensureOpen();
+                    }
+                }
+            }
+            if (isNew) {
+                pendingSaves.add(entity);
+            } else {
+                pendingUpdates.put(id, entity);
+            }
+            if (depth() >= batchSize) {
+                scheduleFlush();
+            }
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private void writeNow(T entity, boolean isNew) {
+        writeLock.lock();
+        try {
+            Runnable restorer = repository.rememberGeneratedState(entity);
+            try {
+                if (isNew) {
+                    repository.save(entity);
+                } else {
+                    repository.update(entity);
+                }
+                commit();
+            } catch (RuntimeException e) {
+                rollback(List.of(restorer));
+                throw e;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void backgroundFlush() {
+        try {
+            writePending();
+        } catch (RuntimeException e) {
+            queueLock.lock();
+            try {
+                lastFailure = e;
+            } finally {
+                queueLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Takes the write lock before draining the queue, so that a batch drained earlier by another thread
+     * is already committed when this one starts.
+     */
+    private void writePending() {
+        writeLock.lock();
+        try {
+            List<T> saves;
+            Collection<T> updates;
+            queueLock.lock();
+            try {
+                flushScheduled = false;
+                saves = pendingSaves;
+                updates = pendingUpdates.values();
+                writingSaves = saves;
+                pendingSaves = new ArrayList<>();
+                pendingUpdates = new LinkedHashMap<>();
+                notFull.signalAll();
+            } finally {
+                queueLock.unlock();
+            }
+            try {
+                writeBatch(saves, updates);
+            } finally {
+                // the IDs set by the batch, or put back by its rollback, are published by the lock
+                queueLock.lock();
+                try {
+                    writingSaves = List.of();
+                    batchDone.signalAll();
+                } finally {
+                    queueLock.unlock();
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void writeBatch(List<T> saves, Collection<T> updates) {
+        if (saves.isEmpty() && updates.isEmpty()) return;
+
+        List<Runnable> restorers = new ArrayList<>();
+        saves.forEach(entity -> restorers.add(repository.rememberGeneratedState(entity)));
+        updates.forEach(entity -> restorers.add(repository.rememberGeneratedState(entity)));
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            repository.saveAll(saves);
+            repository.updateAll(updates);
+            commit();
+            failed = false;
+        } catch (RuntimeException e) {
+            rollback(restorers);
+            throw e;
+        } finally {
+            recordFlush(saves.size() + updates.size(), System.nanoTime() - start, failed);
+        }
+    }
+
+    private void commit() {
+        try {
+            if (!repository.connection.getAutoCommit()) {
+                repository.connection.commit();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Committing write-behind batch failed. Try again later");
+        }
+    }
+
+    /**
+     * Rolls back a failed batch so that its writes are not committed by the next one, and puts back the IDs
+     * and versions its entities had before. In auto-commit mode the statements that succeeded are already committed
+     * and keep what they set.
+     */
+    private void rollback(List<Runnable> restorers) {
+        try {
+            if (repository.connection.getAutoCommit()) return;
+            repository.connection.rollback();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+        restorers.forEach(Runnable::run);
+    }
+
+    private void recordFlush(int entities, long nanos, boolean failed) {
+        queueLock.lock();
+        try {
+            if (failed) {
+                failedFlushes++;
+                return;
+            }
+            flushes++;
+            flushedEntities += entities;
+            lastFlushNanos = nanos;
+            maxFlushNanos = Math.max(maxFlushNanos, nanos);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            flusher.execute(this::backgroundFlush);
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Write-behind buffer is closed");
+        }
+    }
+
+    private static <T> boolean containsSame(Collection<T> entities, T entity) {
+        return entities.stream().anyMatch(candidate -> candidate == entity);
+    }
+
+    private int depth() {
+        return pendingSaves.size() + pendingUpdates.size();
+    }
+}
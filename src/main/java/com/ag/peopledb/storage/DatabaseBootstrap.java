@@ -0,0 +1,174 @@
+package com.ag.peopledb.storage;
+
+import com.ag.peopledb.exeption.UnableToSaveException;
+import com.ag.peopledb.repository.ConnectionProvider;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Opens the people database in one of the {@link StorageMode}s, creates the schema if it is missing
+ * and hands out connections to it. Keeps one connection open for as long as it runs, so an in-memory database
+ * stays alive between the connections handed out.
+ * <p>
+ * {@link #fromSystemProperties()} picks the mode from {@code peopledb.storage} (default IN_MEMORY),
+ * the database file or snapshot location from {@code peopledb.path} (default ./peopledb)
+ * and the snapshot interval in seconds from {@code peopledb.snapshot.interval} (default 60).
+ */
+public class DatabaseBootstrap implements ConnectionProvider, AutoCloseable {
+
+    private static final String SCHEMA_SCRIPT = "classpath:/schema.sql";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot.zip";
+
+    private final StorageMode storageMode;
+    private final String url;
+    private final Path snapshotFile;
+    private final Connection anchorConnection;
+    private final ScheduledExecutorService snapshotter;
+
+    private DatabaseBootstrap(StorageMode storageMode, String url, Path snapshotFile, Duration snapshotInterval) {
+        this.storageMode = storageMode;
+        this.url = url;
+        this.snapshotFile = snapshotFile;
+        try {
+            anchorConnection = DriverManager.getConnection(url);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Starting database failed: " + url);
+        }
+        try (Statement statement = anchorConnection.createStatement()) {
+            if (snapshotFile != null && Files.exists(snapshotFile)) {
+                statement.execute(String.format("RUNSCRIPT FROM %s COMPRESSION ZIP", quote(snapshotFile)));
+            }
+            statement.execute(String.format("RUNSCRIPT FROM '%s'", SCHEMA_SCRIPT));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            // drops a partly restored in-memory database and leaves the snapshot file as it is
+            closeQuietly(anchorConnection);
+            throw new UnableToSaveException("Starting database failed: " + url);
+        }
+
+        if (snapshotFile == null) {
+            snapshotter = null;
+            return;
+        }
+        snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "database-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = snapshotInterval.toMillis();
+        snapshotter.scheduleWithFixedDelay(this::snapshotQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static DatabaseBootstrap file(Path databaseFile) {
+        return new DatabaseBootstrap(StorageMode.FILE, "jdbc:h2:" + databaseFile.toAbsolutePath(), null, null);
+    }
+
+    public static DatabaseBootstrap inMemory(String name) {
+        return new DatabaseBootstrap(StorageMode.IN_MEMORY, "jdbc:h2:mem:" + name, null, null);
+    }
+
+    /**
+     * @param snapshotFile zip file the snapshots are written to and restored from
+     */
+    public static DatabaseBootstrap inMemoryWithSnapshots(String name, Path snapshotFile, Duration snapshotInterval) {
+        return new DatabaseBootstrap(StorageMode.IN_MEMORY_WITH_SNAPSHOTS, "jdbc:h2:mem:" + name, snapshotFile, snapshotInterval);
+    }
+
+    public static DatabaseBootstrap fromSystemProperties() {
+        StorageMode storageMode = StorageMode.valueOf(System.getProperty("peopledb.storage", StorageMode.IN_MEMORY.name()).toUpperCase());
+        Path path = Path.of(System.getProperty("peopledb.path", "peopledb"));
+        Duration snapshotInterval = Duration.ofSeconds(Long.parseLong(System.getProperty("peopledb.snapshot.interval", "60")));
+        return switch (storageMode) {
+            case FILE -> file(path);
+            case IN_MEMORY -> inMemory(path.getFileName().toString());
+            case IN_MEMORY_WITH_SNAPSHOTS -> inMemoryWithSnapshots(path.getFileName().toString(),
+                    path.resolveSibling(path.getFileName() + SNAPSHOT_SUFFIX), snapshotInterval);
+        };
+    }
+
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return DriverManager.getConnection(url);
+    }
+
+    /**
+     * Writes a snapshot of all committed data next to the snapshot file and then moves it over the previous one.
+     * Only available in {@link StorageMode#IN_MEMORY_WITH_SNAPSHOTS}.
+     */
+    public synchronized void snapshot() {
+        if (snapshotFile == null) {
+            throw new IllegalStateException("Snapshots are not enabled in " + storageMode + " mode");
+        }
+        Path temporaryFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (Connection connection = getConnection(); Statement statement = connection.createStatement()) {
+            Files.deleteIfExists(temporaryFile);
+            statement.execute(String.format("SCRIPT TO %s COMPRESSION ZIP", quote(temporaryFile)));
+            Files.move(temporaryFile, snapshotFile, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (SQLException | IOException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Writing snapshot failed: " + snapshotFile);
+        }
+    }
+
+    /**
+     * Takes a last snapshot if snapshots are enabled and closes the database.
+     * An in-memory database is dropped.
+     */
+    @Override
+    public void close() {
+        try {
+            if (snapshotter != null) {
+                snapshotter.shutdownNow();
+                snapshot();
+            }
+        } finally {
+            closeQuietly(anchorConnection);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The absolute path as an SQL string literal, with single quotes doubled.
+     */
+    private static String quote(Path file) {
+        return "'" + file.toAbsolutePath().toString().replace("'", "''") + "'";
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            // keeps the previous snapshot and tries again on the next run
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.ag.peopledb.storage;
+
+public enum StorageMode {
+    /**
+     * H2 database file. Committed transactions are written to the file by H2 within its write delay
+     * (about a second), so a crash loses at most the last moment of commits. Slowest of the three.
+     */
+    FILE,
+    /**
+     * Everything lives in memory only and is gone when the bootstrap is closed or the process stops.
+     * For tests and for data that is rebuilt from elsewhere.
+     */
+    IN_MEMORY,
+    /**
+     * Runs in memory and writes a compressed SQL snapshot to disk in the background, at a fixed interval
+     * and when the bootstrap is closed. On startup the last snapshot is restored. A crash loses everything
+     * committed since the last completed snapshot; a snapshot is replaced atomically, so it is never half written.
+     */
+    IN_MEMORY_WITH_SNAPSHOTS
+}
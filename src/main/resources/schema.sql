@@ -0,0 +1,34 @@
+CREATE TABLE IF NOT EXISTS ADDRESSES (
+    ID BIGINT AUTO_INCREMENT PRIMARY KEY,
+    STREET_ADDRESS VARCHAR(255),
+    ADDRESS2 VARCHAR(255),
+    CITY VARCHAR(255),
+    STATE VARCHAR(255),
+    POSTCODE VARCHAR(255),
+    COUNTY VARCHAR(255),
+    REGION VARCHAR(255),
+    COUNTRY VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS PEOPLE (
+    ID BIGINT AUTO_INCREMENT PRIMARY KEY,
+    FIRST_NAME VARCHAR(255),
+    LAST_NAME VARCHAR(255),
+    DOB TIMESTAMP,
+    SALARY DECIMAL(15, 2) DEFAULT 0,
+    EMAIL VARCHAR(255),
+    HOME_ADDRESS BIGINT REFERENCES ADDRESSES (ID),
+    BUSINESS_ADDRESS BIGINT REFERENCES ADDRESSES (ID),
+    PARENT_ID BIGINT REFERENCES PEOPLE (ID),
+    VERSION BIGINT DEFAULT 0 NOT NULL
+);
+
+-- natural key used by AddressRepository.upsert, added separately for databases created before it
+ALTER TABLE ADDRESSES ADD COLUMN IF NOT EXISTS ADDRESS_KEY VARCHAR(1024);
+CREATE INDEX IF NOT EXISTS ADDRESSES_ADDRESS_KEY_IDX ON ADDRESSES (ADDRESS_KEY);
+
+-- optimistic locking version, added separately for databases created before it
+ALTER TABLE PEOPLE ADD COLUMN IF NOT EXISTS VERSION BIGINT DEFAULT 0 NOT NULL;
+
+CREATE INDEX IF NOT EXISTS PEOPLE_EMAIL_IDX ON PEOPLE (EMAIL);
+CREATE INDEX IF NOT EXISTS PEOPLE_PARENT_ID_IDX ON PEOPLE (PARENT_ID);
@@ -0,0 +1,108 @@
+package com.ag.peopledb.analytics;
+
+import com.ag.peopledb.model.Address;
+import com.ag.peopledb.model.Person;
+import com.ag.peopledb.model.Region;
+import com.ag.peopledb.repository.PeopleRepository;
+import com.ag.peopledb.storage.DatabaseBootstrap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PeopleSnapshotTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2020, 6, 15);
+
+    private PeopleSnapshot snapshot;
+
+    @BeforeEach
+    void setUp() {
+        snapshot = new PeopleSnapshot.Builder()
+                .add(1, "John", "Connor", "john@example.com", bornOn(1980, 6, 15), new BigDecimal("1000.50"), Region.WEST)
+                .add(2, "Bob", "Smith", null, bornOn(1980, 6, 16), new BigDecimal("2000"), Region.WEST)
+                .add(3, "John", "Smith", null, bornOn(2015, 1, 1), new BigDecimal("500.25"), Region.EAST)
+                .add(4, "Anna", "Nowak", null, null, null, null)
+                .build();
+    }
+
+    @Test
+    public void sharesEqualStringsAndKeepsColumnsPerRow(){
+        assertThat(snapshot.size()).isEqualTo(4);
+        assertThat(snapshot.id(2)).isEqualTo(3);
+        assertThat(snapshot.firstName(2)).isSameAs(snapshot.firstName(0));
+        assertThat(snapshot.email(1)).isNull();
+        assertThat(snapshot.region(3)).isNull();
+    }
+
+    @Test
+    public void computesSalaryStats(){
+        SalaryStats stats = snapshot.salaryStats();
+        assertThat(stats.count()).isEqualTo(3);
+        assertThat(stats.sum()).isEqualByComparingTo("3500.75");
+        assertThat(stats.min()).isEqualByComparingTo("500.25");
+        assertThat(stats.max()).isEqualByComparingTo("2000");
+        assertThat(stats.average()).isEqualByComparingTo("1166.92");
+    }
+
+    @Test
+    public void groupsSalaryStatsByRegion(){
+        Map<Region, SalaryStats> byRegion = snapshot.salaryStatsByRegion();
+        assertThat(byRegion.get(Region.WEST).sum()).isEqualByComparingTo("3000.50");
+        assertThat(byRegion.get(Region.EAST).count()).isEqualTo(1);
+        assertThat(byRegion.get(Region.NORTH).count()).isZero();
+    }
+
+    @Test
+    public void countsPeopleInAgeBands(){
+        long[] histogram = snapshot.ageHistogram(TODAY, 10, 5);
+        assertThat(histogram).containsExactly(1, 0, 0, 1, 1);
+    }
+
+    @Test
+    public void loadsPeopleFromDatabase() throws SQLException {
+        try (DatabaseBootstrap database = DatabaseBootstrap.inMemory("peopleSnapshot");
+             Connection connection = database.getConnection()) {
+            PeopleRepository repository = new PeopleRepository(connection);
+            repository.save(person("John", "1000.50", ZonedDateTime.of(1980, 6, 15, 12, 0, 0, 0, ZoneOffset.UTC), Region.WEST));
+            repository.save(person("Bob", "2000", ZonedDateTime.of(1980, 6, 16, 12, 0, 0, 0, ZoneOffset.UTC), Region.WEST));
+            repository.save(person("Jack", "500.25", ZonedDateTime.of(2015, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC), Region.EAST));
+            repository.save(person("Anna", null, ZonedDateTime.of(2019, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC), null));
+
+            PeopleSnapshot loaded = PeopleSnapshot.load(connection);
+
+            assertThat(loaded.size()).isEqualTo(4);
+            assertThat(loaded.firstName(0)).isEqualTo("John");
+            assertThat(loaded.region(2)).isEqualTo(Region.EAST);
+            assertThat(loaded.region(3)).isNull();
+            Map<Region, SalaryStats> byRegion = loaded.salaryStatsByRegion();
+            assertThat(byRegion.get(Region.WEST).count()).isEqualTo(2);
+            assertThat(byRegion.get(Region.EAST).count()).isEqualTo(1);
+            assertThat(loaded.salaryStats().count()).isEqualTo(3);
+            assertThat(loaded.salaryStats().sum()).isEqualByComparingTo("3500.75");
+            assertThat(loaded.salaryHistogram(new BigDecimal("1000"), 3)).containsExactly(1, 1, 1);
+            assertThat(loaded.salaryHistogram(new BigDecimal("1000"), 2)).containsExactly(1, 2);
+            assertThat(loaded.ageHistogram(TODAY, 10, 5)).containsExactly(2, 0, 0, 1, 1);
+        }
+    }
+
+    private static Person person(String firstName, String salary, ZonedDateTime dob, Region region) {
+        Person person = new Person(firstName, "Doe", dob, salary == null ? null : new BigDecimal(salary));
+        if (region != null) {
+            person.setHomeAddress(new Address(null, "123 Bale st", "Apt 1a", "Wala Wala", "WA", "90210", "United States", "Fulton county", region));
+        }
+        return person;
+    }
+
+    private static Long bornOn(int year, int month, int day) {
+        return LocalDate.of(year, month, day).atTime(12, 0).toEpochSecond(ZoneOffset.UTC);
+    }
+}
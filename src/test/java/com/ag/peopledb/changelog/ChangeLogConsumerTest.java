@@ -0,0 +1,104 @@
+package com.ag.peopledb.changelog;
+
+import com.ag.peopledb.model.Person;
+import com.ag.peopledb.repository.PeopleRepository;
+import com.ag.peopledb.storage.DatabaseBootstrap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class ChangeLogConsumerTest {
+
+    private DatabaseBootstrap database;
+    private Connection connection;
+    private PeopleRepository repo;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = DatabaseBootstrap.inMemory("changeLogConsumer");
+        connection = database.getConnection();
+        ChangeLog.install(connection);
+        connection.setAutoCommit(false);
+        repo = new PeopleRepository(connection);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+        database.close();
+    }
+
+    @Test
+    public void canReadChangesFromChangeLog() throws SQLException {
+        long start = ChangeLog.latestSequence(connection);
+        Person john = repo.save(person("John"));
+        john.setSalary(new BigDecimal("74587.21"));
+        repo.update(john);
+        repo.delete(john);
+
+        List<Change> changes = new ChangeLogConsumer(connection, start, Duration.ofMinutes(1)).poll(10);
+        assertThat(changes).extracting(Change::tableName, Change::rowId, Change::type).containsExactly(
+                tuple("PEOPLE", john.getId(), ChangeType.INSERT),
+                tuple("PEOPLE", john.getId(), ChangeType.UPDATE),
+                tuple("PEOPLE", john.getId(), ChangeType.DELETE));
+
+        connection.rollback();
+        assertThat(ChangeLog.latestSequence(connection)).isEqualTo(start);
+    }
+
+    @Test
+    public void waitsForUncommittedChanges() throws SQLException {
+        long start = ChangeLog.latestSequence(connection);
+        try (Connection otherConnection = database.getConnection()) {
+            PeopleRepository otherRepo = new PeopleRepository(otherConnection);
+            Person john = repo.save(person("John"));
+            Person bob = otherRepo.save(person("Bob"));
+
+            ChangeLogConsumer consumer = new ChangeLogConsumer(otherConnection, start, Duration.ofMinutes(1));
+            assertThat(consumer.poll(10)).isEmpty();
+
+            connection.commit();
+            assertThat(consumer.poll(10)).extracting(Change::rowId).containsExactly(john.getId(), bob.getId());
+            assertThat(consumer.position()).isEqualTo(start + 2);
+        }
+    }
+
+    @Test
+    public void gapsAgeAtTheSameTime() throws Exception {
+        long start = ChangeLog.latestSequence(connection);
+        try (Connection committing = database.getConnection();
+             Connection otherConnection = database.getConnection()) {
+            otherConnection.setAutoCommit(false);
+            PeopleRepository committingRepo = new PeopleRepository(committing);
+            repo.save(person("Rolled back first"));
+            Person john = committingRepo.save(person("John"));
+            new PeopleRepository(otherConnection).save(person("Rolled back second"));
+            Person bob = committingRepo.save(person("Bob"));
+
+            ChangeLogConsumer consumer = new ChangeLogConsumer(committing, start, Duration.ofMillis(300));
+            assertThat(consumer.poll(10)).isEmpty();
+            connection.rollback();
+            otherConnection.rollback();
+
+            // the second gap has been seen by the first poll, so both are skipped together
+            Thread.sleep(400);
+            assertThat(consumer.poll(10)).extracting(Change::rowId).containsExactly(john.getId(), bob.getId());
+            assertThat(consumer.position()).isEqualTo(start + 4);
+        }
+    }
+
+    private static Person person(String firstName) {
+        return new Person(firstName, "Connor", ZonedDateTime.of(1980, 11, 01, 21, 05, 10, 0, ZoneId.of("-7")));
+    }
+}
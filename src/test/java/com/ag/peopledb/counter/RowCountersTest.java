@@ -0,0 +1,111 @@
+package com.ag.peopledb.counter;
+
+import com.ag.peopledb.model.Address;
+import com.ag.peopledb.model.Person;
+import com.ag.peopledb.model.Region;
+import com.ag.peopledb.repository.PeopleRepository;
+import com.ag.peopledb.storage.DatabaseBootstrap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RowCountersTest {
+
+    private DatabaseBootstrap database;
+    private Connection connection;
+    private PeopleRepository repo;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = DatabaseBootstrap.inMemory("rowCounters");
+        connection = database.getConnection();
+        RowCounters.install(connection);
+        repo = new PeopleRepository(connection);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+        database.close();
+    }
+
+    @Test
+    public void canCountWithRowCounters() throws SQLException {
+        Person john = person("John", Region.WEST);
+        Person bob = new Person("Bob", "Connor", ZonedDateTime.of(2000, 05, 04, 01, 05, 10, 0, ZoneId.of("+4")));
+        john.addChild(bob);
+        repo.save(john);
+
+        assertThat(repo.count()).isEqualTo(2);
+        assertThat(repo.countByRegion(Region.WEST)).isEqualTo(1);
+        repo.delete(bob);
+        assertThat(repo.count()).isEqualTo(1);
+
+        connection.createStatement().execute("UPDATE ROW_COUNTS SET ROW_COUNT = ROW_COUNT + 5 WHERE COUNTER_NAME = 'PEOPLE'");
+        assertThat(RowCounters.reconcile(connection)).isEqualTo(1);
+        assertThat(repo.count()).isEqualTo(1);
+    }
+
+    @Test
+    public void countsByRegionFollowAddressRegionUpdates() throws SQLException {
+        Person john = repo.save(person("John", Region.WEST));
+        repo.save(person("Anna", Region.WEST));
+        Person bob = repo.save(person("Bob", Region.EAST));
+
+        try (PreparedStatement preparedStatement = connection.prepareStatement("UPDATE ADDRESSES SET REGION = ? WHERE ID = ?")) {
+            preparedStatement.setString(1, Region.EAST.name());
+            preparedStatement.setLong(2, john.getHomeAddress().get().id());
+            preparedStatement.executeUpdate();
+            preparedStatement.setString(1, Region.NORTH.name());
+            preparedStatement.setLong(2, bob.getHomeAddress().get().id());
+            preparedStatement.executeUpdate();
+        }
+
+        assertThat(repo.countByRegion(Region.WEST)).isEqualTo(1);
+        assertThat(repo.countByRegion(Region.EAST)).isEqualTo(1);
+        assertThat(repo.countByRegion(Region.NORTH)).isEqualTo(1);
+        assertThat(RowCounters.reconcile(connection)).isZero();
+    }
+
+    @Test
+    public void countsChildrenByParentId() {
+        Person john = person("John", Region.WEST);
+        Person zenon = new Person("Zenon", "Connor", ZonedDateTime.of(2001, 07, 11, 21, 05, 10, 0, ZoneId.of("-7")));
+        Person leon = new Person("Leon", "Connor", ZonedDateTime.of(2003, 07, 11, 21, 05, 10, 0, ZoneId.of("-7")));
+        john.addChild(zenon);
+        john.addChild(leon);
+        repo.save(john);
+
+        assertThat(repo.countByParentId(john.getId())).isEqualTo(2);
+        assertThat(repo.countByParentId(zenon.getId())).isZero();
+        repo.delete(leon);
+        assertThat(repo.countByParentId(john.getId())).isEqualTo(1);
+        assertThat(RowCounters.reconcile(connection)).isZero();
+    }
+
+    @Test
+    public void fallsBackToCountingOnceTriggersAreDropped() throws SQLException {
+        repo.save(person("John", Region.WEST));
+        assertThat(repo.count()).isEqualTo(1);
+
+        connection.createStatement().execute("DROP TRIGGER PEOPLE_ROW_COUNTS");
+        repo.save(person("Bob", Region.WEST));
+
+        assertThat(repo.count()).isEqualTo(2);
+        assertThat(repo.countByRegion(Region.WEST)).isEqualTo(2);
+    }
+
+    private static Person person(String firstName, Region region) {
+        Person person = new Person(firstName, "Connor", ZonedDateTime.of(1980, 11, 01, 21, 05, 10, 0, ZoneId.of("-7")));
+        person.setHomeAddress(new Address(null, "123 Bale st " + firstName, "Apt 1a", "Wala Wala", "WA", "90210", "United States", "Fulton country", region));
+        return person;
+    }
+}
@@ -0,0 +1,173 @@
+package com.ag.peopledb.export;
+
+import com.ag.peopledb.model.Address;
+import com.ag.peopledb.model.OperationClass;
+import com.ag.peopledb.model.Person;
+import com.ag.peopledb.model.Region;
+import com.ag.peopledb.repository.AdmissionControl;
+import com.ag.peopledb.repository.PeopleRepository;
+import com.ag.peopledb.storage.DatabaseBootstrap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PeopleExporterTest {
+
+    @TempDir
+    Path directory;
+
+    private DatabaseBootstrap database;
+    private Connection connection;
+    private PeopleRepository repo;
+    private PeopleExporter exporter;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = DatabaseBootstrap.inMemory("peopleExporter");
+        connection = database.getConnection();
+        repo = new PeopleRepository(connection);
+        exporter = new PeopleExporter(database);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+        database.close();
+    }
+
+    @Test
+    public void writesCsvInTheHr5mImportLayout() throws IOException {
+        Person john = new Person("John", "Connor", ZonedDateTime.of(1980, 11, 01, 21, 05, 10, 0, ZoneId.of("-7")), new BigDecimal("74587.21"));
+        john.setEmail("john.connor@example.com");
+        john.setHomeAddress(new Address(null, "123 Bale st", "Apt 1a", "Wala Wala", "WA", "90210", "United States", "Fulton county", Region.WEST));
+        repo.save(john);
+
+        Path file = directory.resolve("people.csv");
+        assertThat(exporter.export(file, ExportFormat.CSV)).isEqualTo(1);
+
+        List<String> lines = Files.readAllLines(file);
+        assertThat(lines).hasSize(2);
+        assertThat(lines.get(0)).isEqualTo(CsvRowWriter.HEADER);
+        assertThat(lines.get(0).split(",")).hasSize(37);
+
+        // read back the way the Hr5m.csv import does
+        String[] a = lines.get(1).split(",", -1);
+        assertThat(a).hasSize(37);
+        assertThat(a[0]).isEqualTo(john.getId().toString());
+        assertThat(a[2]).isEqualTo("John");
+        assertThat(a[4]).isEqualTo("Connor");
+        assertThat(a[6]).isEqualTo("john.connor@example.com");
+        LocalDate dob = LocalDate.parse(a[10], DateTimeFormatter.ofPattern("M/d/yyyy"));
+        LocalTime tob = LocalTime.parse(a[11], new DateTimeFormatterBuilder().parseCaseInsensitive().appendPattern("h:mm:ss a").toFormatter(Locale.US));
+        assertThat(LocalDateTime.of(dob, tob)).isEqualTo(john.getDob().withZoneSameInstant(ZoneOffset.UTC).toLocalDateTime());
+        assertThat(new BigDecimal(a[25])).isEqualByComparingTo("74587.21");
+        assertThat(a[30]).isEqualTo("Fulton county");
+        assertThat(a[31]).isEqualTo("Wala Wala");
+        assertThat(a[32]).isEqualTo("WA");
+        assertThat(a[33]).isEqualTo("90210");
+        assertThat(a[34]).isEqualTo("WEST");
+    }
+
+    @Test
+    public void quotesFieldsWithCarriageReturns() throws IOException {
+        repo.save(new Person("John\rJack", "Connor", ZonedDateTime.of(1980, 11, 01, 21, 05, 10, 0, ZoneId.of("-7"))));
+
+        Path file = directory.resolve("people.csv");
+        assertThat(exporter.export(file, ExportFormat.CSV)).isEqualTo(1);
+
+        String content = Files.readString(file);
+        assertThat(content).contains(",\"John\rJack\",");
+        assertThat(content.split("\n")).hasSize(2);
+    }
+
+    @Test
+    public void readsBackBinaryExport() throws IOException {
+        Person john = new Person("John", "Connor", ZonedDateTime.of(1980, 11, 01, 21, 05, 10, 0, ZoneId.of("-7")), new BigDecimal("74587.21"));
+        john.setEmail("john.connor@example.com");
+        john.setHomeAddress(new Address(null, "123 Bale st", null, "Wala Wala", "WA", "90210", "United States", "Fulton county", Region.WEST));
+        repo.save(john);
+        Person bob = repo.save(new Person("Bob", "Smith", ZonedDateTime.of(1985, 05, 04, 01, 05, 10, 0, ZoneId.of("+4")), null));
+
+        Path file = directory.resolve("people.bin");
+        assertThat(exporter.export(file, ExportFormat.BINARY)).isEqualTo(2);
+
+        List<Person> people;
+        try (BinaryPeopleReader reader = new BinaryPeopleReader(file)) {
+            people = reader.stream().toList();
+        }
+        assertThat(people).hasSize(2);
+
+        Person readJohn = people.get(0);
+        assertThat(readJohn.getId()).isEqualTo(john.getId());
+        assertThat(readJohn.getEmail()).isEqualTo("john.connor@example.com");
+        assertThat(readJohn.getSalary()).isEqualByComparingTo("74587.21");
+        assertThat(readJohn.getDob().toInstant()).isEqualTo(john.getDob().toInstant());
+        Address home = readJohn.getHomeAddress().get();
+        assertThat(home.id()).isEqualTo(john.getHomeAddress().get().id());
+        assertThat(home.streetAddress()).isEqualTo("123 Bale st");
+        assertThat(home.address2()).isNull();
+        assertThat(home.region()).isEqualTo(Region.WEST);
+
+        Person readBob = people.get(1);
+        assertThat(readBob.getId()).isEqualTo(bob.getId());
+        assertThat(readBob.getSalary()).isNull();
+        assertThat(readBob.getEmail()).isNull();
+        assertThat(readBob.getHomeAddress()).isEmpty();
+    }
+
+    @Test
+    public void splitsExportIntoPartsHoldingEveryRowOnce() throws IOException {
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            people.add(new Person("Person" + i, "Export", ZonedDateTime.of(1980, 11, 01, 21, 05, 10, 0, ZoneId.of("-7"))));
+        }
+        repo.saveAll(people);
+
+        List<Path> files = exporter.export(directory, "people", ExportFormat.BINARY, 4);
+        assertThat(files).hasSize(4);
+
+        List<Long> exportedIds = new ArrayList<>();
+        for (Path file : files) {
+            try (BinaryPeopleReader reader = new BinaryPeopleReader(file); Stream<Person> part = reader.stream()) {
+                part.forEach(person -> exportedIds.add(person.getId()));
+            }
+        }
+        assertThat(exportedIds).containsExactlyInAnyOrderElementsOf(people.stream().map(Person::getId).toList());
+        assertThat(exportedIds).isSorted();
+    }
+
+    @Test
+    public void exportsEveryPartAsAdmittedScan() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            repo.save(new Person("Person" + i, "Export", ZonedDateTime.of(1980, 11, 01, 21, 05, 10, 0, ZoneId.of("-7"))));
+        }
+        AdmissionControl admissionControl = new AdmissionControl();
+
+        new PeopleExporter(database, admissionControl).export(directory, "people", ExportFormat.CSV, 4);
+
+        assertThat(admissionControl.metrics(OperationClass.SCAN).admitted()).isEqualTo(4);
+        assertThat(admissionControl.metrics(OperationClass.SCAN).active()).isZero();
+    }
+}
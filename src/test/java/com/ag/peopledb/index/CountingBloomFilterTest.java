@@ -0,0 +1,39 @@
+package com.ag.peopledb.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CountingBloomFilterTest {
+
+    @Test
+    public void neverMissesAddedValues(){
+        CountingBloomFilter filter = CountingBloomFilter.create(10_000, 0.01);
+        LongStream.range(0, 10_000).forEach(filter::add);
+        filter.add("john@example.com");
+
+        assertThat(LongStream.range(0, 10_000).allMatch(filter::mightContain)).isTrue();
+        assertThat(filter.mightContain("john@example.com")).isTrue();
+    }
+
+    @Test
+    public void keepsFalsePositiveRateNearTarget(){
+        CountingBloomFilter filter = CountingBloomFilter.create(10_000, 0.01);
+        LongStream.range(0, 10_000).forEach(filter::add);
+
+        long falsePositives = LongStream.range(1_000_000, 1_100_000).filter(filter::mightContain).count();
+        assertThat(falsePositives).isLessThan(2_000);
+    }
+
+    @Test
+    public void forgetsRemovedValues(){
+        CountingBloomFilter filter = CountingBloomFilter.create(100, 0.001);
+        filter.add("bob@example.com");
+        filter.remove("bob@example.com");
+
+        assertThat(filter.mightContain("bob@example.com")).isFalse();
+        assertThat(filter.isOverCapacity()).isFalse();
+    }
+}
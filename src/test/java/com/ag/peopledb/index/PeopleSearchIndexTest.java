@@ -0,0 +1,105 @@
+package com.ag.peopledb.index;
+
+import com.ag.peopledb.model.Person;
+import com.ag.peopledb.repository.ConnectionProvider;
+import com.ag.peopledb.repository.PeopleRepository;
+import com.ag.peopledb.storage.DatabaseBootstrap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.ZonedDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PeopleSearchIndexTest {
+
+    private PeopleSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new PeopleSearchIndex();
+        index.index(1, "John", "Connor", "john.connor@skynet.com");
+        index.index(2, "Bob", "Smith", "bob@example.com");
+        index.index(3, "Johnny", "Bravo", "jb@example.com");
+        index.index(4, "Anna", "Johnson", null);
+    }
+
+    @Test
+    public void findsSubstringsBestMatchFirst(){
+        assertThat(index.search("john", 10)).containsExactly(1, 3, 4);
+        assertThat(index.search("CONNOR", 10)).containsExactly(1);
+        assertThat(index.search("example", 10)).containsExactly(3, 2);
+    }
+
+    @Test
+    public void findsWordPrefixesOfShortQueries(){
+        assertThat(index.search("b", 10)).containsExactly(2, 3);
+        assertThat(index.search("sk", 10)).containsExactly(1);
+        assertThat(index.search("mi", 10)).isEmpty();
+    }
+
+    @Test
+    public void returnsOnlyTopMatches(){
+        assertThat(index.search("john", 2)).containsExactly(1, 3);
+    }
+
+    @Test
+    public void forgetsRemovedAndReindexedPeople(){
+        index.remove(1);
+        index.index(3, "Jack", "Bravo", null);
+        assertThat(index.search("john", 10)).containsExactly(4);
+        assertThat(index.search("jack", 10)).containsExactly(3);
+        assertThat(index.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void keepsChangesMadeWhileRebuilding() throws SQLException {
+        try (DatabaseBootstrap database = DatabaseBootstrap.inMemory("searchIndexRebuild");
+             Connection connection = database.getConnection()) {
+            PeopleRepository repository = new PeopleRepository(connection);
+            Person john = repository.save(new Person("John", "Connor", ZonedDateTime.now()));
+            Person bob = repository.save(new Person("Bob", "Smith", ZonedDateTime.now()));
+
+            // the first connection reads the ID range, the second one scans; the writes stand in for
+            // listener calls heard after the scan has read their rows
+            AtomicInteger connections = new AtomicInteger();
+            ConnectionProvider writingWhileScanning = () -> {
+                if (connections.incrementAndGet() == 2) {
+                    index.index(bob.getId(), "Bobby", "Smith", null);
+                    index.remove(john.getId());
+                }
+                return database.getConnection();
+            };
+            index.rebuild(writingWhileScanning, 1);
+
+            assertThat(connections).hasValue(2);
+            assertThat(index.search("bobby", 10)).containsExactly(bob.getId());
+            assertThat(index.search("connor", 10)).isEmpty();
+            assertThat(index.size()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void indexesTheEmailAnUpdateStored() throws SQLException {
+        try (DatabaseBootstrap database = DatabaseBootstrap.inMemory("searchIndexUpdate");
+             Connection connection = database.getConnection()) {
+            PeopleRepository repository = new PeopleRepository(connection);
+            Person john = new Person("John", "Connor", ZonedDateTime.now());
+            john.setEmail("john.connor@skynet.com");
+            repository.save(john);
+            PeopleSearchIndex searchIndex = PeopleSearchIndex.build(database, 1);
+            repository.addListener(searchIndex);
+
+            john.setEmail("john@resistance.org");
+            repository.update(john);
+            assertThat(searchIndex.search("resistance", 10)).containsExactly(john.getId());
+
+            searchIndex.rebuild(database, 1);
+            assertThat(searchIndex.search("resistance", 10)).containsExactly(john.getId());
+            assertThat(searchIndex.search("skynet", 10)).isEmpty();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.ag.peopledb.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdRangeTest {
+    @Test
+    public void splitsRangeIntoContiguousPartitions(){
+        List<IdRange> partitions = new IdRange(1, 10).split(3);
+        assertThat(partitions).containsExactly(new IdRange(1, 4), new IdRange(5, 8), new IdRange(9, 10));
+    }
+
+    @Test
+    public void neverCreatesMorePartitionsThanIds(){
+        List<IdRange> partitions = new IdRange(7, 8).split(4);
+        assertThat(partitions).containsExactly(new IdRange(7, 7), new IdRange(8, 8));
+    }
+}
@@ -0,0 +1,84 @@
+package com.ag.peopledb.repository;
+
+import com.ag.peopledb.exeption.OperationRejectedException;
+import com.ag.peopledb.model.OperationClass;
+import com.ag.peopledb.storage.DatabaseBootstrap;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AdmissionControlTest {
+
+    @Test
+    public void rejectsScanWhenAllSlotsAreTaken() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl()
+                .limit(OperationClass.SCAN, 1, 0, Duration.ZERO);
+        CountDownLatch scanning = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        CompletableFuture<Void> runningScan = CompletableFuture.runAsync(() -> {
+            AdmissionControl.Permit permit = admissionControl.admit(OperationClass.SCAN);
+            try {
+                scanning.countDown();
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                permit.close();
+            }
+        });
+        scanning.await();
+
+        assertThatThrownBy(() -> admissionControl.admit(OperationClass.SCAN))
+                .isInstanceOf(OperationRejectedException.class);
+        admissionControl.admit(OperationClass.POINT_READ).close();
+
+        done.countDown();
+        runningScan.get();
+        admissionControl.admit(OperationClass.SCAN).close();
+        assertThat(admissionControl.metrics(OperationClass.SCAN))
+                .isEqualTo(new AdmissionControl.Metrics(OperationClass.SCAN, 2, 1, 0, 0, 0));
+    }
+
+    @Test
+    public void nestedOperationsRunUnderTheOuterPermit() {
+        AdmissionControl admissionControl = new AdmissionControl()
+                .limit(OperationClass.WRITE, 1, 0, Duration.ZERO);
+
+        AdmissionControl.Permit outer = admissionControl.admit(OperationClass.WRITE);
+        AdmissionControl.Permit nested = admissionControl.admit(OperationClass.WRITE);
+        assertThat(admissionControl.metrics(OperationClass.WRITE).active()).isEqualTo(1);
+
+        nested.close();
+        assertThat(admissionControl.metrics(OperationClass.WRITE).active()).isEqualTo(1);
+        outer.close();
+        assertThat(admissionControl.metrics(OperationClass.WRITE).active()).isZero();
+        admissionControl.admit(OperationClass.WRITE).close();
+    }
+
+    @Test
+    public void queryTimeoutCancelsLongQuery() throws SQLException {
+        AdmissionControl admissionControl = new AdmissionControl()
+                .queryTimeout(OperationClass.SCAN, Duration.ofSeconds(1));
+        try (DatabaseBootstrap database = DatabaseBootstrap.inMemory("queryTimeout");
+             Connection connection = database.getConnection();
+             AdmissionControl.Permit permit = admissionControl.admit(OperationClass.SCAN)) {
+            PreparedStatement longQuery = connection.prepareStatement(
+                    "SELECT COUNT(*) FROM SYSTEM_RANGE(1, 1000000) AS A, SYSTEM_RANGE(1, 1000000) AS B WHERE A.X + B.X = 7");
+            long start = System.nanoTime();
+
+            assertThatThrownBy(() -> permit.execute(longQuery, PreparedStatement::executeQuery))
+                    .isInstanceOf(SQLException.class)
+                    .satisfies(e -> assertThat(((SQLException) e).getSQLState()).isEqualTo("57014"));
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(10));
+        }
+        assertThat(admissionControl.metrics(OperationClass.SCAN).timedOut()).isEqualTo(1);
+    }
+}
@@ -1,9 +1,14 @@
 package com.ag.peopledb.repository;
 
+import com.ag.peopledb.exeption.OptimisticLockException;
 import com.ag.peopledb.model.Address;
+import com.ag.peopledb.model.OperationClass;
 import com.ag.peopledb.model.Person;
 import com.ag.peopledb.model.Region;
+import com.ag.peopledb.storage.DatabaseBootstrap;
+import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
@@ -13,27 +18,43 @@ import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toSet;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class PeopleRepositoryTest {
 
+    private static DatabaseBootstrap database;
+
     private Connection connection;
     private PeopleRepository repo;
 
+    @BeforeAll
+    static void startDatabase() {
+        database = DatabaseBootstrap.fromSystemProperties();
+    }
+
+    @AfterAll
+    static void stopDatabase() {
+        database.close();
+    }
+
     @BeforeEach
     void setUp() throws SQLException {
-        connection = DriverManager.getConnection("jdbc:h2:C:/Users/justy/Desktop/JAVA/DB/peopledb;TRACE_LEVEL_SYSTEM_OUT=0");
+        connection = database.getConnection();
         connection.setAutoCommit(false);
         repo = new PeopleRepository(connection);
     }
@@ -61,6 +82,15 @@ public class PeopleRepositoryTest {
         assertThat(savedPerson1.getId()).isNotEqualTo(savedPerson2.getId());
     }
 
+    @Test
+    public void canSaveAllInOneBatch(){
+        Person john = new Person("John", "Connor", ZonedDateTime.of(1980, 11, 01, 21, 05, 10, 0, ZoneId.of("-7")));
+        Person bob = new Person("Bob", "Smith", ZonedDateTime.of(1985, 05, 04, 01, 05, 10, 0, ZoneId.of("+4")));
+        repo.saveAll(List.of(john, bob));
+        assertThat(john.getId()).isGreaterThan(0);
+        assertThat(bob.getId()).isGreaterThan(john.getId());
+    }
+
     @Test
     public void canSavePersonWithHomeAddress() throws SQLException {
         Person john = new Person("Waldemar", "Pawlak", ZonedDateTime.of(1980, 11, 01, 21, 05, 10, 0, ZoneId.of("-7")));
@@ -132,6 +162,73 @@ public class PeopleRepositoryTest {
         connection.commit();
     }
 
+    @Test
+    public void canUpsertPersonByEmail(){
+        Person john = new Person("John", "Connor", ZonedDateTime.of(1980, 11, 01, 21, 05, 10, 0, ZoneId.of("-7")));
+        john.setEmail("john.connor@example.com");
+        john.setHomeAddress(new Address(null,"123 Bale st", "Apt 1a", "Wala Wala", "WA", "90210", "United States", "Fulton country", Region.WEST));
+        repo.upsert(john);
+        long startCount = repo.count();
+
+        Person reimported = new Person("John", "Connor", ZonedDateTime.of(1980, 11, 01, 21, 05, 10, 0, ZoneId.of("-7")), new BigDecimal("74587.21"));
+        reimported.setEmail("john.connor@example.com");
+        reimported.setHomeAddress(new Address(null,"123  Bale St", "Apt 1A", "Wala Wala", "WA", "90210", "United States", "Fulton country", Region.WEST));
+        Person bob = new Person("Bob", "Smith", ZonedDateTime.of(1985, 05, 04, 01, 05, 10, 0, ZoneId.of("+4")));
+        bob.setEmail("bob.smith@example.com");
+        repo.upsertAll(List.of(reimported, bob));
+
+        assertThat(reimported.getId()).isEqualTo(john.getId());
+        assertThat(reimported.getVersion()).isEqualTo(1);
+        assertThat(reimported.getHomeAddress().get().id()).isEqualTo(john.getHomeAddress().get().id());
+        assertThat(bob.getVersion()).isEqualTo(0);
+        assertThat(repo.count()).isEqualTo(startCount + 1);
+        assertThat(repo.findById(john.getId()).get().getSalary()).isEqualByComparingTo("74587.21");
+    }
+
+    @Test
+    public void canReimportFamilyWithoutDuplicatingChildren(){
+        Person waldemar = family(null);
+        repo.upsert(waldemar);
+        long startCount = repo.count();
+
+        Person reimported = family(new BigDecimal("1000"));
+        repo.upsert(reimported);
+
+        assertThat(reimported.getId()).isEqualTo(waldemar.getId());
+        assertThat(repo.count()).isEqualTo(startCount);
+        assertThat(repo.countByParentId(waldemar.getId())).isEqualTo(2);
+        assertThat(reimported.getChildren()).map(Person::getId)
+                .containsExactlyInAnyOrderElementsOf(waldemar.getChildren().stream().map(Person::getId).toList());
+        assertThat(reimported.getChildren()).map(Person::getVersion).containsOnly(1L);
+        assertThat(repo.findById(reimported.getChildren().iterator().next().getId()).get().getSalary()).isEqualByComparingTo("1000");
+    }
+
+    private static Person family(BigDecimal childSalary) {
+        Person waldemar = new Person("Waldemar", "Pawlak", ZonedDateTime.of(1970, 11, 01, 21, 05, 10, 0, ZoneId.of("-7")));
+        waldemar.setEmail("waldemar.reimport@example.com");
+        waldemar.addChild(new Person("Zenon", "Pawlak", ZonedDateTime.of(2001, 07, 11, 21, 05, 10, 0, ZoneId.of("-7")), childSalary));
+        waldemar.addChild(new Person("Leon", "Pawlak", ZonedDateTime.of(2003, 07, 11, 21, 05, 10, 0, ZoneId.of("-7")), childSalary));
+        return waldemar;
+    }
+
+    @Test
+    public void canSaveFamilyWithUnitOfWork() {
+        Person john = new Person("Waldemar", "Pawlak", ZonedDateTime.of(1980, 11, 01, 21, 05, 10, 0, ZoneId.of("-7")));
+        Address address = new Address(null,"123 Bale st", "Apt 1a", "Wala Wala", "WA", "90210", "United States", "Fulton country", Region.WEST);
+        john.setHomeAddress(address);
+        Person zenon = new Person("Zenon", "Pawlak", ZonedDateTime.of(2001, 07, 11, 21, 05, 10, 0, ZoneId.of("-7")));
+        john.addChild(zenon);
+        long startCount = repo.count();
+
+        UnitOfWork unitOfWork = new UnitOfWork(repo);
+        unitOfWork.registerNew(john);
+        unitOfWork.commit();
+
+        assertThat(address.id()).isGreaterThan(0);
+        assertThat(zenon.getId()).isGreaterThan(john.getId());
+        assertThat(repo.count()).isEqualTo(startCount + 2);
+    }
+
     @Test
     public void canFindPersonById(){
         Person savedPerson = repo.save(new Person("test", "ofSaving", ZonedDateTime.now()));
@@ -149,8 +246,28 @@ public class PeopleRepositoryTest {
         Person savedPerson = repo.save(john);
 
         Person foundPerson = repo.findById(savedPerson.getId()).get();
+        assertThat(foundPerson.getFirstName()).isEqualTo("Waldemar");
         assertThat(foundPerson.getChildren().stream().map(Person::getFirstName).collect(toSet()))
-                .contains("Waldemar", "Zenon", "Kazimierz", "Leon");
+                .containsExactlyInAnyOrder("Zenon", "Kazimierz", "Leon");
+    }
+
+    @Test
+    public void canFindTreeById(){
+        Person john = new Person("Waldemar", "Pawlak", ZonedDateTime.of(1980, 11, 01, 21, 05, 10, 0, ZoneId.of("-7")));
+        Person zenon = new Person("Zenon", "Pawlak", ZonedDateTime.of(2001, 07, 11, 21, 05, 10, 0, ZoneId.of("-7")));
+        john.addChild(zenon);
+        john.addChild(new Person("Leon", "Pawlak", ZonedDateTime.of(2003, 07, 11, 21, 05, 10, 0, ZoneId.of("-7"))));
+        Person grandchild = new Person("Kazimierz", "Pawlak", ZonedDateTime.of(2025, 07, 11, 21, 05, 10, 0, ZoneId.of("-7")));
+        zenon.addChild(grandchild);
+        repo.save(john);
+
+        Person foundPerson = repo.findTreeById(john.getId(), 5).get();
+        Person foundZenon = foundPerson.getChildren().stream().filter(zenon::equals).findFirst().get();
+
+        assertThat(foundPerson.getChildren().stream().map(Person::getFirstName).collect(toSet())).containsOnly("Zenon", "Leon");
+        assertThat(foundZenon.getChildren()).containsOnly(grandchild);
+        assertThat(repo.findTreeById(john.getId(), 1).get().getChildren())
+                .allMatch(child -> child.getChildren().isEmpty());
     }
 
     @Test
@@ -208,6 +325,160 @@ public class PeopleRepositoryTest {
         assertThat(updatedPerson.getSalary()).isNotEqualTo(foundPerson.getSalary());
     }
 
+    @Test
+    public void cannotUpdateStalePerson(){
+        Person savedPerson = repo.save(new Person("John", "Doe", ZonedDateTime.now()));
+        Person stalePerson = repo.findById(savedPerson.getId()).get();
+
+        savedPerson.setSalary(new BigDecimal("100.00"));
+        repo.update(savedPerson);
+        stalePerson.setSalary(new BigDecimal("200.00"));
+
+        assertThatThrownBy(() -> repo.update(stalePerson)).isInstanceOf(OptimisticLockException.class);
+        assertThat(savedPerson.getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    public void cannotDeleteStalePeopleInBulk(){
+        Person john = repo.save(new Person("John", "Doe", ZonedDateTime.now()));
+        Person bob = repo.save(new Person("Bob", "Doe", ZonedDateTime.now()));
+        Person staleBob = repo.findById(bob.getId()).get();
+        repo.update(bob);
+        List<Person> deleted = new ArrayList<>();
+        repo.addListener(new EntityListener<>() {
+            @Override
+            public void onDelete(Person person) {
+                deleted.add(person);
+            }
+        });
+
+        assertThatThrownBy(() -> repo.delete(john, staleBob)).isInstanceOf(OptimisticLockException.class);
+        assertThat(deleted).containsExactly(john);
+        assertThat(repo.existsById(bob.getId())).isTrue();
+    }
+
+    @Test
+    public void canUpdateWithRetryAfterConflict(){
+        Person savedPerson = repo.save(new Person("John", "Doe", ZonedDateTime.now()));
+        AtomicInteger attempts = new AtomicInteger();
+
+        Person updatedPerson = repo.updateWithRetry(savedPerson.getId(), person -> {
+            if (attempts.incrementAndGet() == 1) {
+                // somebody else updates the row between the read and the update
+                savedPerson.setSalary(new BigDecimal("100.00"));
+                repo.update(savedPerson);
+            }
+            person.setSalary(new BigDecimal("5000.00"));
+        }, 3);
+
+        assertThat(attempts).hasValue(2);
+        assertThat(updatedPerson.getVersion()).isEqualTo(2);
+        assertThat(repo.findById(savedPerson.getId()).get().getSalary()).isEqualByComparingTo("5000.00");
+    }
+
+    @Test
+    public void canCheckExistenceWithFilters(){
+        Person john = new Person("John", "Doe", ZonedDateTime.now());
+        john.setEmail("john.doe@example.com");
+        repo.save(john);
+        repo.enableExistenceFilters(0.01);
+
+        Person bob = new Person("Bob", "Doe", ZonedDateTime.now());
+        bob.setEmail("bob.doe@example.com");
+        repo.save(bob);
+
+        assertThat(repo.existsById(john.getId())).isTrue();
+        assertThat(repo.existsById(bob.getId())).isTrue();
+        assertThat(repo.existsById(bob.getId() + 1000)).isFalse();
+        assertThat(repo.existsByEmail("john.doe@example.com")).isTrue();
+        assertThat(repo.existsByEmail("bob.doe@example.com")).isTrue();
+        assertThat(repo.existsByEmail("nobody@example.com")).isFalse();
+    }
+
+    @Test
+    public void existenceFiltersFollowDeletes() throws SQLException {
+        try (DatabaseBootstrap filterDatabase = DatabaseBootstrap.inMemory("existenceFilters");
+             Connection filterConnection = filterDatabase.getConnection();
+             Connection otherConnection = filterDatabase.getConnection()) {
+            PeopleRepository filterRepo = new PeopleRepository(filterConnection);
+            Person john = new Person("John", "Doe", ZonedDateTime.now());
+            john.setEmail("john.doe@example.com");
+            filterRepo.save(john);
+            filterRepo.enableExistenceFilters(0.01);
+
+            // inserted after the filters were built, so never added to them
+            Person late = new Person("Late", "Doe", ZonedDateTime.now());
+            late.setEmail("late.doe@example.com");
+            new PeopleRepository(otherConnection).save(late);
+            Person bob = new Person("Bob", "Doe", ZonedDateTime.now());
+            bob.setEmail("bob.doe@example.com");
+            filterRepo.save(bob);
+
+            filterRepo.delete(late);
+            filterRepo.delete(bob);
+            assertThatThrownBy(() -> filterRepo.delete(bob)).isInstanceOf(OptimisticLockException.class);
+
+            assertThat(filterRepo.existsById(bob.getId())).isFalse();
+            assertThat(filterRepo.existsByEmail("bob.doe@example.com")).isFalse();
+            assertThat(filterRepo.existsById(john.getId())).isTrue();
+            assertThat(filterRepo.existsByEmail("john.doe@example.com")).isTrue();
+        }
+    }
+
+    @Test
+    public void existenceFiltersRemoveStoredEmailOnDelete() throws SQLException {
+        try (DatabaseBootstrap filterDatabase = DatabaseBootstrap.inMemory("existenceFiltersStoredEmail");
+             Connection filterConnection = filterDatabase.getConnection()) {
+            PeopleRepository filterRepo = new PeopleRepository(filterConnection);
+            Person john = new Person("John", "Doe", ZonedDateTime.now());
+            john.setEmail("john.doe@example.com");
+            Person bob = new Person("Bob", "Doe", ZonedDateTime.now());
+            bob.setEmail("bob.doe@example.com");
+            filterRepo.save(john);
+            filterRepo.save(bob);
+            filterRepo.enableExistenceFilters(0.01);
+
+            // changed in memory only, the row still holds Bob's stored email
+            bob.setEmail("john.doe@example.com");
+            filterRepo.delete(bob);
+
+            assertThat(filterRepo.existsByEmail("john.doe@example.com")).isTrue();
+            assertThat(filterRepo.existsByEmail("bob.doe@example.com")).isFalse();
+        }
+    }
+
+    @Test
+    public void existenceFiltersFollowUpsertsThatRewriteEmail() throws SQLException {
+        try (DatabaseBootstrap filterDatabase = DatabaseBootstrap.inMemory("existenceFiltersUpsert");
+             Connection filterConnection = filterDatabase.getConnection()) {
+            PeopleRepository filterRepo = new PeopleRepository(filterConnection);
+            ZonedDateTime dob = ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"));
+            Person john = new Person("John", "Doe", dob);
+            john.setEmail("john.doe@example.com");
+            filterRepo.save(john);
+            filterRepo.enableExistenceFilters(0.01);
+
+            filterRepo.setUpsertKey("FIRST_NAME", "LAST_NAME");
+            Person renamed = new Person("John", "Doe", dob);
+            renamed.setEmail("john@doe.example.com");
+            filterRepo.upsertAll(List.of(renamed));
+
+            assertThat(renamed.getId()).isEqualTo(john.getId());
+            assertThat(filterRepo.existsByEmail("john@doe.example.com")).isTrue();
+        }
+    }
+
+    record PersonSalary(long id, String lastName, BigDecimal salary) {}
+
+    @Test
+    public void canFindProjectionById(){
+        Person savedPerson = repo.save(new Person("John", "Doe", ZonedDateTime.now(), new BigDecimal("74587.21")));
+
+        PersonSalary personSalary = repo.findById(savedPerson.getId(), PersonSalary.class).get();
+
+        assertThat(personSalary).isEqualTo(new PersonSalary(savedPerson.getId(), "Doe", new BigDecimal("74587.21")));
+    }
+
     @Test
     @Disabled
     public void loadData() throws IOException, SQLException {
@@ -216,6 +487,7 @@ public class PeopleRepositoryTest {
                 .parseCaseInsensitive()
                 .appendPattern("h:mm:ss a")
                 .toFormatter(Locale.US);
+        repo.enableExistenceFilters(0.01);
 
         Files.lines(Path.of("C:/Users/justy/Desktop/JAVA/UDEMY__Java_Foundations/Hr5m.csv"))
                 .skip(1)
@@ -231,6 +503,7 @@ public class PeopleRepositoryTest {
                     person.setEmail(a[6]);
                     return person;
                 })
+                .filter(person -> !repo.existsByEmail(person.getEmail()))
                 .forEach(repo::save);
         connection.commit();
     }
@@ -243,4 +516,62 @@ public class PeopleRepositoryTest {
         assertThat(all.size()).isEqualTo(count);
     }
 
+    @Test
+    public void canFindAllInParallel() throws SQLException {
+        try (DatabaseBootstrap parallelDatabase = DatabaseBootstrap.inMemory("findAllInParallel");
+             Connection parallelConnection = parallelDatabase.getConnection()) {
+            PeopleRepository parallelRepo = new PeopleRepository(parallelConnection);
+            List<Person> people = new ArrayList<>();
+            for (int i = 0; i < 3000; i++) {
+                people.add(new Person("Person" + i, "Parallel", ZonedDateTime.of(1980, 11, 01, 21, 05, 10, 0, ZoneId.of("-7"))));
+            }
+            parallelRepo.saveAll(people);
+            List<Long> allIds = parallelRepo.findAll().stream().map(Person::getId).sorted().toList();
+
+            try (Stream<Person> ordered = parallelRepo.findAllParallel(parallelDatabase, 4, true)) {
+                assertThat(ordered.map(Person::getId).toList()).containsExactlyElementsOf(allIds);
+            }
+            try (Stream<Person> unordered = parallelRepo.findAllParallel(parallelDatabase, 4, false)) {
+                assertThat(unordered.map(Person::getId).toList()).containsExactlyInAnyOrderElementsOf(allIds);
+            }
+            try (Stream<Person> firstFew = parallelRepo.findAllParallel(parallelDatabase, 4, true)) {
+                assertThat(firstFew.limit(3).map(Person::getId).toList()).containsExactlyElementsOf(allIds.subList(0, 3));
+            }
+        }
+    }
+
+    @Test
+    public void canFindAllInParallelWithFewerScanSlotsThanPartitions() throws SQLException {
+        try (DatabaseBootstrap parallelDatabase = DatabaseBootstrap.inMemory("findAllInParallelAdmitted");
+             Connection parallelConnection = parallelDatabase.getConnection()) {
+            PeopleRepository parallelRepo = new PeopleRepository(parallelConnection);
+            List<Person> people = new ArrayList<>();
+            for (int i = 0; i < 3000; i++) {
+                people.add(new Person("Person" + i, "Parallel", ZonedDateTime.of(1980, 11, 01, 21, 05, 10, 0, ZoneId.of("-7"))));
+            }
+            parallelRepo.saveAll(people);
+            List<Long> allIds = people.stream().map(Person::getId).sorted().toList();
+            AdmissionControl admissionControl = new AdmissionControl().limit(OperationClass.SCAN, 1, 1, Duration.ofSeconds(5));
+            parallelRepo.setAdmissionControl(admissionControl);
+
+            try (Stream<Person> ordered = parallelRepo.findAllParallel(parallelDatabase, 8, true)) {
+                assertThat(ordered.map(Person::getId).toList()).containsExactlyElementsOf(allIds);
+            }
+            try (Stream<Person> firstFew = parallelRepo.findAllParallel(parallelDatabase, 8, false)) {
+                assertThat(firstFew.limit(3).toList()).hasSize(3);
+            }
+
+            await(() -> admissionControl.metrics(OperationClass.SCAN).active() == 0);
+            assertThat(admissionControl.metrics(OperationClass.SCAN))
+                    .isEqualTo(new AdmissionControl.Metrics(OperationClass.SCAN, 2, 0, 0, 0, 0));
+        }
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+
 }
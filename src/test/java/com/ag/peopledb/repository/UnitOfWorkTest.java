@@ -0,0 +1,127 @@
+package com.ag.peopledb.repository;
+
+import com.ag.peopledb.exeption.OptimisticLockException;
+import com.ag.peopledb.model.Address;
+import com.ag.peopledb.model.Person;
+import com.ag.peopledb.model.Region;
+import com.ag.peopledb.storage.DatabaseBootstrap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class UnitOfWorkTest {
+
+    private DatabaseBootstrap database;
+    private Connection connection;
+    private PeopleRepository repo;
+    private UnitOfWork unitOfWork;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = DatabaseBootstrap.inMemory("unitOfWork");
+        connection = database.getConnection();
+        repo = new PeopleRepository(connection);
+        unitOfWork = new UnitOfWork(repo);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+        database.close();
+    }
+
+    @Test
+    public void writesDirtyPeople() {
+        Person john = repo.save(person("John"));
+        Person changed = repo.findById(john.getId()).get();
+        changed.setSalary(new BigDecimal("5000"));
+
+        unitOfWork.registerDirty(changed);
+        unitOfWork.commit();
+
+        Person found = repo.findById(john.getId()).get();
+        assertThat(found.getSalary()).isEqualByComparingTo("5000");
+        assertThat(found.getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    public void removesPeople() {
+        Person john = repo.save(person("John"));
+        Person bob = repo.save(person("Bob"));
+
+        unitOfWork.registerRemoved(repo.findById(john.getId()).get());
+        unitOfWork.commit();
+
+        assertThat(repo.findById(john.getId())).isEmpty();
+        assertThat(repo.findById(bob.getId())).isPresent();
+    }
+
+    @Test
+    public void removesChildrenBeforeParentsReadBack() {
+        Person waldemar = person("Waldemar");
+        Person zenon = person("Zenon");
+        Person kazik = person("Kazimierz");
+        waldemar.addChild(zenon);
+        zenon.addChild(kazik);
+        repo.save(waldemar);
+
+        Person foundWaldemar = repo.findById(waldemar.getId()).get();
+        Person foundZenon = repo.findById(zenon.getId()).get();
+        Person foundKazik = repo.findById(kazik.getId()).get();
+        assertThat(foundKazik.getParent()).isEmpty();
+
+        unitOfWork.registerRemoved(foundWaldemar);
+        unitOfWork.registerRemoved(foundZenon);
+        unitOfWork.registerRemoved(foundKazik);
+        unitOfWork.commit();
+
+        assertThat(repo.count()).isZero();
+    }
+
+    @Test
+    public void rollsBackAndRestoresEntitiesOnFailure() throws SQLException {
+        Person john = repo.save(person("John"));
+        Person staleJohn = repo.findById(john.getId()).get();
+        repo.update(john);
+        Person anna = repo.save(person("Anna"));
+        Person annaChange = repo.findById(anna.getId()).get();
+        annaChange.setSalary(new BigDecimal("3000"));
+        Person bob = person("Bob");
+        Address address = new Address(null, "123 Bale st", "Apt 1a", "Wala Wala", "WA", "90210", "United States", "Fulton county", Region.WEST);
+        bob.setHomeAddress(address);
+
+        unitOfWork.registerNew(bob);
+        unitOfWork.registerDirty(annaChange);
+        unitOfWork.registerDirty(staleJohn);
+        assertThatThrownBy(unitOfWork::commit).isInstanceOf(OptimisticLockException.class);
+
+        assertThat(connection.getAutoCommit()).isTrue();
+        assertThat(bob.getId()).isNull();
+        assertThat(address.id()).isNull();
+        assertThat(annaChange.getVersion()).isZero();
+        assertThat(repo.count()).isEqualTo(2);
+        assertThat(repo.findById(anna.getId()).get().getSalary()).isEqualByComparingTo("0");
+
+        unitOfWork.clear();
+        unitOfWork.registerNew(bob);
+        unitOfWork.registerDirty(annaChange);
+        unitOfWork.commit();
+
+        assertThat(repo.findById(bob.getId()).get().getHomeAddress().get().streetAddress()).isEqualTo("123 Bale st");
+        assertThat(repo.findById(anna.getId()).get().getSalary()).isEqualByComparingTo("3000");
+        assertThat(repo.count()).isEqualTo(3);
+    }
+
+    private static Person person(String firstName) {
+        return new Person(firstName, "Pawlak", ZonedDateTime.of(1980, 11, 01, 21, 05, 10, 0, ZoneId.of("-7")));
+    }
+}
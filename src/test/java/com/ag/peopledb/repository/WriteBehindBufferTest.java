@@ -0,0 +1,290 @@
+package com.ag.peopledb.repository;
+
+import com.ag.peopledb.exeption.OptimisticLockException;
+import com.ag.peopledb.model.Address;
+import com.ag.peopledb.model.Person;
+import com.ag.peopledb.model.Region;
+import com.ag.peopledb.repository.WriteBehindBuffer.BackpressurePolicy;
+import com.ag.peopledb.storage.DatabaseBootstrap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class WriteBehindBufferTest {
+
+    private static final Duration NEVER = Duration.ofHours(1);
+
+    private DatabaseBootstrap database;
+    private Connection writerConnection;
+    private Connection readerConnection;
+    private PeopleRepository writer;
+    private GatingListener gate;
+    private PeopleRepository reader;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = DatabaseBootstrap.inMemory("writeBehindBuffer");
+        writerConnection = database.getConnection();
+        writerConnection.setAutoCommit(false);
+        readerConnection = database.getConnection();
+        writer = new PeopleRepository(writerConnection);
+        gate = new GatingListener();
+        writer.addListener(gate);
+        reader = new PeopleRepository(readerConnection);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        gate.release.countDown();
+        writerConnection.close();
+        readerConnection.close();
+        database.close();
+    }
+
+    @Test
+    public void coalescesRepeatedUpdatesOfTheSameId() {
+        Person john = reader.save(person("John"));
+        Person firstChange = reader.findById(john.getId()).get();
+        firstChange.setSalary(new BigDecimal("1000"));
+        Person secondChange = reader.findById(john.getId()).get();
+        secondChange.setSalary(new BigDecimal("2000"));
+
+        try (WriteBehindBuffer<Person> buffer = writer.writeBehind(10, 10, NEVER, BackpressurePolicy.BLOCK)) {
+            buffer.update(firstChange);
+            buffer.update(secondChange);
+            assertThat(buffer.metrics().queueDepth()).isEqualTo(1);
+            buffer.flush();
+
+            assertThat(buffer.metrics().coalescedUpdates()).isEqualTo(1);
+            assertThat(buffer.metrics().flushedEntities()).isEqualTo(1);
+        }
+        assertThat(reader.findById(john.getId()).get().getSalary()).isEqualByComparingTo("2000");
+    }
+
+    @Test
+    public void flushIsABarrier() throws SQLException {
+        try (WriteBehindBuffer<Person> buffer = writer.writeBehind(10, 10, NEVER, BackpressurePolicy.BLOCK)) {
+            buffer.save(person("John"));
+            buffer.save(person("Bob"));
+            buffer.save(person("Anna"));
+            assertThat(countCommitted()).isZero();
+
+            buffer.flush();
+            assertThat(countCommitted()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    public void blocksWhenFull() throws Exception {
+        try (WriteBehindBuffer<Person> buffer = fillWhileFlusherIsBusy(BackpressurePolicy.BLOCK)) {
+            CompletableFuture<Void> blockedSave = CompletableFuture.runAsync(() -> buffer.save(person("Dan")));
+            Thread.sleep(200);
+            assertThat(blockedSave).isNotDone();
+
+            gate.release.countDown();
+            blockedSave.get(5, TimeUnit.SECONDS);
+            buffer.flush();
+            assertThat(buffer.metrics().rejected()).isZero();
+        }
+        assertThat(countCommitted()).isEqualTo(4);
+    }
+
+    @Test
+    public void rejectsWhenFull() throws Exception {
+        try (WriteBehindBuffer<Person> buffer = fillWhileFlusherIsBusy(BackpressurePolicy.REJECT)) {
+            assertThatThrownBy(() -> buffer.save(person("Dan")))
+                    .isInstanceOf(RejectedExecutionException.class);
+            assertThat(buffer.metrics().rejected()).isEqualTo(1);
+
+            gate.release.countDown();
+            buffer.flush();
+        }
+        assertThat(countCommitted()).isEqualTo(3);
+    }
+
+    @Test
+    public void writesOnTheCallingThreadWhenFull() throws Exception {
+        try (WriteBehindBuffer<Person> buffer = fillWhileFlusherIsBusy(BackpressurePolicy.CALLER_RUNS)) {
+            Person dan = person("Dan");
+            CompletableFuture<String> callerThread = CompletableFuture.supplyAsync(() -> {
+                buffer.save(dan);
+                return Thread.currentThread().getName();
+            });
+            // the caller writes Dan itself, after the batch the flusher is in
+            Thread.sleep(200);
+            assertThat(callerThread).isNotDone();
+            assertThat(buffer.metrics().queueDepth()).isEqualTo(2);
+
+            gate.release.countDown();
+            assertThat(callerThread.get(5, TimeUnit.SECONDS)).isEqualTo(gate.savedBy.get("Dan"));
+            assertThat(dan.getId()).isNotNull();
+            buffer.flush();
+        }
+        assertThat(countCommitted()).isEqualTo(4);
+    }
+
+    @Test
+    public void rethrowsFailureAndRollsBackTheBatch() throws SQLException {
+        Person john = reader.save(person("John"));
+        Person staleJohn = reader.findById(john.getId()).get();
+        reader.update(john);
+        Person dropped = person("Dropped");
+
+        try (WriteBehindBuffer<Person> buffer = writer.writeBehind(10, 10, NEVER, BackpressurePolicy.BLOCK)) {
+            buffer.save(dropped);
+            buffer.update(staleJohn);
+            assertThatThrownBy(buffer::flush).isInstanceOf(OptimisticLockException.class);
+            assertThat(buffer.metrics().failedFlushes()).isEqualTo(1);
+            assertThat(dropped.getId()).isNull();
+
+            buffer.save(person("Bob"));
+            buffer.flush();
+        }
+        assertThat(countCommitted("Dropped")).isZero();
+        assertThat(countCommitted("Bob")).isEqualTo(1);
+    }
+
+    @Test
+    public void retriesFailedBatch() throws SQLException {
+        Person john = reader.save(person("John"));
+        Person staleJohn = reader.findById(john.getId()).get();
+        reader.update(john);
+        Person anna = reader.save(person("Anna"));
+        Person annaChange = reader.findById(anna.getId()).get();
+        annaChange.setSalary(new BigDecimal("3000"));
+        Person dropped = person("Dropped");
+        dropped.setHomeAddress(new Address(null, "123 Bale st", "Apt 1a", "Wala Wala", "WA", "90210", "United States", "Fulton county", Region.WEST));
+
+        try (WriteBehindBuffer<Person> buffer = writer.writeBehind(10, 10, NEVER, BackpressurePolicy.BLOCK)) {
+            buffer.save(dropped);
+            buffer.update(annaChange);
+            buffer.update(staleJohn);
+            assertThatThrownBy(buffer::flush).isInstanceOf(OptimisticLockException.class);
+            assertThat(dropped.getId()).isNull();
+            assertThat(dropped.getHomeAddress().get().id()).isNull();
+            assertThat(annaChange.getVersion()).isZero();
+
+            buffer.save(dropped);
+            buffer.update(annaChange);
+            buffer.flush();
+        }
+        Person committed = reader.findById(dropped.getId()).get();
+        assertThat(committed.getHomeAddress().get().streetAddress()).isEqualTo("123 Bale st");
+        assertThat(reader.findById(anna.getId()).get().getSalary()).isEqualByComparingTo("3000");
+        assertThat(countCommitted("Dropped")).isEqualTo(1);
+    }
+
+    @Test
+    public void updateWaitsForTheBatchSavingTheEntity() throws Exception {
+        gate.gated = true;
+        Person anna = person("Anna");
+        try (WriteBehindBuffer<Person> buffer = writer.writeBehind(10, 1, NEVER, BackpressurePolicy.BLOCK)) {
+            buffer.save(anna);
+            assertThat(gate.flusherBusy.await(5, TimeUnit.SECONDS)).isTrue();
+
+            anna.setSalary(new BigDecimal("2000"));
+            CompletableFuture<Void> update = CompletableFuture.runAsync(() -> buffer.update(anna));
+            Thread.sleep(200);
+            assertThat(update).isNotDone();
+
+            gate.release.countDown();
+            update.get(5, TimeUnit.SECONDS);
+            buffer.flush();
+        }
+        assertThat(reader.findById(anna.getId()).get().getSalary()).isEqualByComparingTo("2000");
+    }
+
+    @Test
+    public void keepsMetrics() {
+        try (WriteBehindBuffer<Person> buffer = writer.writeBehind(10, 10, NEVER, BackpressurePolicy.BLOCK)) {
+            buffer.save(person("John"));
+            buffer.save(person("Bob"));
+            assertThat(buffer.metrics().queueDepth()).isEqualTo(2);
+            assertThat(buffer.metrics().flushes()).isZero();
+
+            buffer.flush();
+            buffer.save(person("Anna"));
+            buffer.flush();
+
+            WriteBehindBuffer.Metrics metrics = buffer.metrics();
+            assertThat(metrics.queueDepth()).isZero();
+            assertThat(metrics.flushes()).isEqualTo(2);
+            assertThat(metrics.flushedEntities()).isEqualTo(3);
+            assertThat(metrics.failedFlushes()).isZero();
+            assertThat(metrics.lastFlushLatency()).isPositive();
+            assertThat(metrics.maxFlushLatency()).isGreaterThanOrEqualTo(metrics.lastFlushLatency());
+        }
+    }
+
+    /**
+     * Capacity 2 and batch size 1: the flusher takes the first save and is held inside its batch,
+     * the next two saves fill the queue.
+     */
+    private WriteBehindBuffer<Person> fillWhileFlusherIsBusy(BackpressurePolicy backpressurePolicy) throws InterruptedException {
+        gate.gated = true;
+        WriteBehindBuffer<Person> buffer = writer.writeBehind(2, 1, NEVER, backpressurePolicy);
+        buffer.save(person("Anna"));
+        assertThat(gate.flusherBusy.await(5, TimeUnit.SECONDS)).isTrue();
+        buffer.save(person("Bob"));
+        buffer.save(person("Carl"));
+        assertThat(buffer.metrics().queueDepth()).isEqualTo(2);
+        return buffer;
+    }
+
+    private long countCommitted() throws SQLException {
+        ResultSet resultSet = readerConnection.createStatement().executeQuery("SELECT COUNT(*) FROM PEOPLE");
+        resultSet.next();
+        return resultSet.getLong(1);
+    }
+
+    private long countCommitted(String firstName) throws SQLException {
+        ResultSet resultSet = readerConnection.createStatement().executeQuery("SELECT COUNT(*) FROM PEOPLE WHERE FIRST_NAME = '" + firstName + "'");
+        resultSet.next();
+        return resultSet.getLong(1);
+    }
+
+    private static Person person(String firstName) {
+        return new Person(firstName, "Buffered", ZonedDateTime.of(1980, 11, 01, 21, 05, 10, 0, ZoneId.of("-7")));
+    }
+
+    /**
+     * Holds the flusher inside its batch until {@link #release} is counted down, when gated,
+     * and remembers which thread saved whom.
+     */
+    private static class GatingListener implements EntityListener<Person> {
+        final CountDownLatch flusherBusy = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Map<String, String> savedBy = new ConcurrentHashMap<>();
+        volatile boolean gated;
+
+        @Override
+        public void onSave(Person person) {
+            savedBy.put(person.getFirstName(), Thread.currentThread().getName());
+            if (gated && Thread.currentThread().getName().equals("write-behind-flusher")) {
+                flusherBusy.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
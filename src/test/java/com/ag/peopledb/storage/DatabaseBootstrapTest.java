@@ -0,0 +1,118 @@
+package com.ag.peopledb.storage;
+
+import com.ag.peopledb.exeption.UnableToSaveException;
+import com.ag.peopledb.model.Person;
+import com.ag.peopledb.repository.PeopleRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DatabaseBootstrapTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void restoresSnapshotOnStartup() throws SQLException {
+        Path snapshotFile = directory.resolve("people.snapshot.zip");
+        long johnId;
+        try (DatabaseBootstrap database = DatabaseBootstrap.inMemoryWithSnapshots("snapshotRestore", snapshotFile, Duration.ofHours(1));
+             Connection connection = database.getConnection()) {
+            PeopleRepository repo = new PeopleRepository(connection);
+            johnId = repo.save(new Person("John", "Connor", ZonedDateTime.of(1980, 11, 01, 21, 05, 10, 0, ZoneId.of("-7")))).getId();
+            repo.save(new Person("Bob", "Smith", ZonedDateTime.of(1985, 05, 04, 01, 05, 10, 0, ZoneId.of("+4"))));
+            database.snapshot();
+        }
+        assertThat(snapshotFile).exists();
+
+        try (DatabaseBootstrap database = DatabaseBootstrap.inMemoryWithSnapshots("snapshotRestore", snapshotFile, Duration.ofHours(1));
+             Connection connection = database.getConnection()) {
+            PeopleRepository repo = new PeopleRepository(connection);
+            assertThat(repo.count()).isEqualTo(2);
+            assertThat(repo.findById(johnId).get().getFirstName()).isEqualTo("John");
+        }
+    }
+
+    @Test
+    public void restoresSnapshotFromPathWithQuote() throws SQLException, IOException {
+        Path snapshotFile = Files.createDirectory(directory.resolve("o'connor")).resolve("people.snapshot.zip");
+        try (DatabaseBootstrap database = DatabaseBootstrap.inMemoryWithSnapshots("snapshotQuotedPath", snapshotFile, Duration.ofHours(1));
+             Connection connection = database.getConnection()) {
+            new PeopleRepository(connection).save(new Person("John", "Connor", ZonedDateTime.of(1980, 11, 01, 21, 05, 10, 0, ZoneId.of("-7"))));
+        }
+        assertThat(snapshotFile).exists();
+
+        try (DatabaseBootstrap database = DatabaseBootstrap.inMemoryWithSnapshots("snapshotQuotedPath", snapshotFile, Duration.ofHours(1));
+             Connection connection = database.getConnection()) {
+            assertThat(new PeopleRepository(connection).count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void startsEmptyWithoutSnapshotFile() throws SQLException {
+        Path snapshotFile = directory.resolve("missing.snapshot.zip");
+        try (DatabaseBootstrap database = DatabaseBootstrap.inMemoryWithSnapshots("snapshotMissing", snapshotFile, Duration.ofHours(1));
+             Connection connection = database.getConnection()) {
+            assertThat(new PeopleRepository(connection).count()).isZero();
+        }
+        assertThat(snapshotFile).exists();
+    }
+
+    @Test
+    public void upgradesDatabaseCreatedBeforeVersionColumn() throws SQLException {
+        Path databaseFile = directory.resolve("legacy");
+        long johnId;
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:" + databaseFile.toAbsolutePath());
+             Statement statement = connection.createStatement()) {
+            statement.execute("""
+                    CREATE TABLE ADDRESSES (ID BIGINT AUTO_INCREMENT PRIMARY KEY, STREET_ADDRESS VARCHAR(255), ADDRESS2 VARCHAR(255),
+                    CITY VARCHAR(255), STATE VARCHAR(255), POSTCODE VARCHAR(255), COUNTY VARCHAR(255), REGION VARCHAR(255), COUNTRY VARCHAR(255))
+                    """);
+            statement.execute("""
+                    CREATE TABLE PEOPLE (ID BIGINT AUTO_INCREMENT PRIMARY KEY, FIRST_NAME VARCHAR(255), LAST_NAME VARCHAR(255), DOB TIMESTAMP,
+                    SALARY DECIMAL(15, 2) DEFAULT 0, EMAIL VARCHAR(255), HOME_ADDRESS BIGINT REFERENCES ADDRESSES (ID),
+                    BUSINESS_ADDRESS BIGINT REFERENCES ADDRESSES (ID), PARENT_ID BIGINT REFERENCES PEOPLE (ID))
+                    """);
+            statement.execute("INSERT INTO PEOPLE (FIRST_NAME, LAST_NAME, DOB) VALUES ('John', 'Connor', TIMESTAMP '1980-11-02 04:05:10')",
+                    Statement.RETURN_GENERATED_KEYS);
+            ResultSet generatedKeys = statement.getGeneratedKeys();
+            generatedKeys.next();
+            johnId = generatedKeys.getLong(1);
+        }
+
+        try (DatabaseBootstrap database = DatabaseBootstrap.file(databaseFile);
+             Connection connection = database.getConnection()) {
+            PeopleRepository repo = new PeopleRepository(connection);
+            Person john = repo.findById(johnId).get();
+            assertThat(john.getVersion()).isZero();
+            john.setSalary(new BigDecimal("74587.21"));
+            repo.update(john);
+            assertThat(repo.findById(johnId).get().getVersion()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void refusesToStartFromCorruptSnapshot() throws IOException {
+        Path snapshotFile = directory.resolve("corrupt.snapshot.zip");
+        Files.writeString(snapshotFile, "not a zip file");
+
+        assertThatThrownBy(() -> DatabaseBootstrap.inMemoryWithSnapshots("snapshotCorrupt", snapshotFile, Duration.ofHours(1)))
+                .isInstanceOf(UnableToSaveException.class);
+        assertThat(snapshotFile).hasContent("not a zip file");
+    }
+}